@@ -0,0 +1,71 @@
+package com.ivianuu.rxspotifyplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the analysis tap on the pump per block and of one spectrum on the reader side
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalysisBenchmark {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    private final short[] samples = new short[BLOCK_SIZE];
+    private final float[] frame = new float[AnalysisTap.FRAME_SIZE];
+
+    private AnalysisTap idleTap;
+    private AnalysisTap activeTap;
+    private SpectrumAnalyzer analyzer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            samples[i] = (short) random.nextInt();
+        }
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = random.nextFloat() * 2 - 1;
+        }
+
+        idleTap = new AnalysisTap();
+        activeTap = new AnalysisTap();
+        activeTap.acquire();
+        analyzer = new SpectrumAnalyzer(AnalysisTap.FRAME_SIZE);
+    }
+
+    @Benchmark
+    public AnalysisTap tapIdle() {
+        idleTap.write(samples, BLOCK_SIZE, SAMPLE_RATE, CHANNELS);
+        return idleTap;
+    }
+
+    @Benchmark
+    public AnalysisTap tapActive() {
+        activeTap.write(samples, BLOCK_SIZE, SAMPLE_RATE, CHANNELS);
+        return activeTap;
+    }
+
+    @Benchmark
+    public Spectrum spectrum() {
+        return analyzer.analyze(frame, SAMPLE_RATE / 2, 0L);
+    }
+}
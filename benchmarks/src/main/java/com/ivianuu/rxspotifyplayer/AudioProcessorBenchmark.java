@@ -0,0 +1,82 @@
+package com.ivianuu.rxspotifyplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the built in processors for one block, a block of 4096 stereo samples at 44.1 khz lasts 46 ms
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioProcessorBenchmark {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    private final short[] source = new short[BLOCK_SIZE];
+    private final short[] samples = new short[BLOCK_SIZE];
+
+    private BiquadEqualizer equalizer;
+    private PeakLimiter limiter;
+    private LoudnessNormalizer normalizer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            source[i] = (short) random.nextInt();
+        }
+
+        equalizer = BiquadEqualizer.create(5);
+        equalizer.setBand(0, BiquadEqualizer.BandType.LOW_SHELF, 100f, 4f, 0.707f);
+        equalizer.setBand(1, BiquadEqualizer.BandType.PEAKING, 400f, -2f, 1f);
+        equalizer.setBand(2, BiquadEqualizer.BandType.PEAKING, 1500f, 3f, 1f);
+        equalizer.setBand(3, BiquadEqualizer.BandType.PEAKING, 5000f, -3f, 1f);
+        equalizer.setBand(4, BiquadEqualizer.BandType.HIGH_SHELF, 10000f, 2f, 0.707f);
+        equalizer.configure(SAMPLE_RATE, CHANNELS);
+
+        // random full scale samples keep the limiter busy all the time
+        limiter = PeakLimiter.create(-6f, 5000, 50f);
+        limiter.configure(SAMPLE_RATE, CHANNELS);
+
+        normalizer = LoudnessNormalizer.create();
+        normalizer.configure(SAMPLE_RATE, CHANNELS);
+    }
+
+    @Benchmark
+    public short[] equalizer() {
+        System.arraycopy(source, 0, samples, 0, BLOCK_SIZE);
+        equalizer.process(samples, BLOCK_SIZE);
+        return samples;
+    }
+
+    @Benchmark
+    public short[] limiter() {
+        System.arraycopy(source, 0, samples, 0, BLOCK_SIZE);
+        limiter.process(samples, BLOCK_SIZE);
+        return samples;
+    }
+
+    @Benchmark
+    public short[] normalizer() {
+        System.arraycopy(source, 0, samples, 0, BLOCK_SIZE);
+        normalizer.process(samples, BLOCK_SIZE);
+        return samples;
+    }
+}
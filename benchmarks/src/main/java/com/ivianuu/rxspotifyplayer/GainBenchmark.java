@@ -0,0 +1,80 @@
+package com.ivianuu.rxspotifyplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of applying a gain to one block of samples
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GainBenchmark {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    private final short[] source = new short[BLOCK_SIZE];
+    private final short[] samples = new short[BLOCK_SIZE];
+
+    private GainStage constantGain;
+    private GainStage linearRamp;
+    private GainStage exponentialRamp;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            source[i] = (short) random.nextInt();
+        }
+
+        constantGain = new GainStage();
+        constantGain.setRamp(0, VolumeRamp.LINEAR);
+        constantGain.setTarget(0.5f);
+
+        // the ramps are never advanced so every block is processed mid ramp
+        linearRamp = new GainStage();
+        linearRamp.setRamp(1000, VolumeRamp.LINEAR);
+        linearRamp.setTarget(0.1f);
+
+        exponentialRamp = new GainStage();
+        exponentialRamp.setRamp(1000, VolumeRamp.EXPONENTIAL);
+        exponentialRamp.setTarget(0.1f);
+    }
+
+    @Benchmark
+    public short[] constantGain() {
+        System.arraycopy(source, 0, samples, 0, BLOCK_SIZE);
+        constantGain.process(samples, BLOCK_SIZE, SAMPLE_RATE, CHANNELS);
+        return samples;
+    }
+
+    @Benchmark
+    public short[] linearRamp() {
+        System.arraycopy(source, 0, samples, 0, BLOCK_SIZE);
+        linearRamp.process(samples, BLOCK_SIZE, SAMPLE_RATE, CHANNELS);
+        return samples;
+    }
+
+    @Benchmark
+    public short[] exponentialRamp() {
+        System.arraycopy(source, 0, samples, 0, BLOCK_SIZE);
+        exponentialRamp.process(samples, BLOCK_SIZE, SAMPLE_RATE, CHANNELS);
+        return samples;
+    }
+}
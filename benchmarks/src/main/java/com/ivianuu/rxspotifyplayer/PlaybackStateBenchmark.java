@@ -0,0 +1,38 @@
+package com.ivianuu.rxspotifyplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packing of playback snapshots and creation of playback states
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaybackStateBenchmark {
+
+    private int progress;
+
+    @Benchmark
+    public long packSnapshot() {
+        return PlaybackSnapshot.pack(true, progress++, 180000);
+    }
+
+    @Benchmark
+    public PlaybackState createState() {
+        return PlaybackState.fromSnapshot(
+                PlaybackSnapshot.pack(true, progress++, 180000), "spotify:track:test", System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,78 @@
+package com.ivianuu.rxspotifyplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the sample buffer between the sdk and the audio pump
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleRingBufferBenchmark {
+
+    private static final int CAPACITY = 1 << 17;
+    private static final int BLOCK_SIZE = 4096;
+
+    @State(Scope.Group)
+    public static class Shared {
+
+        SampleRingBuffer buffer;
+
+        @Setup
+        public void setup() {
+            buffer = new SampleRingBuffer(CAPACITY);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Block {
+
+        final short[] samples = new short[BLOCK_SIZE];
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public int write(Shared shared, Block block) {
+        return shared.buffer.write(block.samples, BLOCK_SIZE);
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public int read(Shared shared, Block block) {
+        int read = shared.buffer.peek(block.samples);
+        shared.buffer.remove(read);
+        return read;
+    }
+
+    @State(Scope.Thread)
+    public static class SingleThreaded {
+
+        final SampleRingBuffer buffer = new SampleRingBuffer(CAPACITY);
+        final short[] samples = new short[BLOCK_SIZE];
+    }
+
+    @Benchmark
+    public int writeThenRead(SingleThreaded state) {
+        state.buffer.write(state.samples, BLOCK_SIZE);
+        int read = state.buffer.peek(state.samples);
+        state.buffer.remove(read);
+        return read;
+    }
+}
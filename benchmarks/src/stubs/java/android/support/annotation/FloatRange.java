@@ -0,0 +1,9 @@
+package android.support.annotation;
+
+/**
+ * Stub of the support annotation for the jvm benchmarks
+ */
+public @interface FloatRange {
+    double from() default Double.NEGATIVE_INFINITY;
+    double to() default Double.POSITIVE_INFINITY;
+}
@@ -0,0 +1,9 @@
+package android.support.annotation;
+
+/**
+ * Stub of the support annotation for the jvm benchmarks
+ */
+public @interface IntRange {
+    long from() default Long.MIN_VALUE;
+    long to() default Long.MAX_VALUE;
+}
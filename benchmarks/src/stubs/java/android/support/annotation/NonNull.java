@@ -0,0 +1,7 @@
+package android.support.annotation;
+
+/**
+ * Stub of the support annotation for the jvm benchmarks
+ */
+public @interface NonNull {
+}
@@ -0,0 +1,24 @@
+package com.spotify.sdk.android.player;
+
+/**
+ * Stub of the sdk metadata for the jvm benchmarks
+ */
+public class Metadata {
+
+    public final Track currentTrack;
+
+    public Metadata(Track currentTrack) {
+        this.currentTrack = currentTrack;
+    }
+
+    public static class Track {
+
+        public final String uri;
+        public final long durationMs;
+
+        public Track(String uri, long durationMs) {
+            this.uri = uri;
+            this.durationMs = durationMs;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.spotify.sdk.android.player;
+
+/**
+ * Stub of the sdk playback state for the jvm benchmarks
+ */
+public class PlaybackState {
+
+    public final boolean isPlaying;
+    public final long positionMs;
+
+    public PlaybackState(boolean isPlaying, long positionMs) {
+        this.isPlaying = isPlaying;
+        this.positionMs = positionMs;
+    }
+}
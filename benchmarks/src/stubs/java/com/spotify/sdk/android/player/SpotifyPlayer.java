@@ -0,0 +1,15 @@
+package com.spotify.sdk.android.player;
+
+/**
+ * Stub of the sdk player for the jvm benchmarks
+ */
+public class SpotifyPlayer {
+
+    public PlaybackState getPlaybackState() {
+        return null;
+    }
+
+    public Metadata getMetadata() {
+        return null;
+    }
+}
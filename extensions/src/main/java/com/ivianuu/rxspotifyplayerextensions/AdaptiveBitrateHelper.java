@@ -0,0 +1,271 @@
+package com.ivianuu.rxspotifyplayerextensions;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.support.annotation.CheckResult;
+import android.support.annotation.NonNull;
+
+import com.ivianuu.rxspotifyplayer.PlaybackSnapshot;
+import com.ivianuu.rxspotifyplayer.RxSpotifyPlayer;
+import com.spotify.sdk.android.player.Error;
+import com.spotify.sdk.android.player.PlaybackBitrate;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+
+import static com.ivianuu.rxspotifyplayer.Preconditions.checkNotNull;
+
+/**
+ * Adaptive bitrate helper
+ */
+public final class AdaptiveBitrateHelper {
+
+    private static final PlaybackBitrate[] LADDER = {
+            PlaybackBitrate.BITRATE_LOW, PlaybackBitrate.BITRATE_NORMAL, PlaybackBitrate.BITRATE_HIGH };
+
+    private static final int UNDERRUN_THRESHOLD = 3;
+    private static final long UNDERRUN_WINDOW_MS = 10000;
+    private static final long REBUFFERING_THRESHOLD_MS = 1000;
+    private static final float LOW_BUFFER_LEVEL = 0.25f;
+    private static final int LOW_BUFFER_TICKS = 5;
+    // gives a new bitrate time to show an effect before stepping down again
+    private static final long STEP_DOWN_COOLDOWN_MS = 5000;
+    private static final long STABLE_PERIOD_MS = 30000;
+    private static final long MAX_STABLE_PERIOD_MS = 8 * STABLE_PERIOD_MS;
+    // a step down this soon after a step up doubles the stable period
+    private static final long FLAPPING_WINDOW_MS = 60000;
+    private static final long TICK_INTERVAL_MS = 1000;
+
+    private AdaptiveBitrateHelper() {
+        // no instances
+    }
+
+    /**
+     * Steps the bitrate down on underruns, rebuffering, a nearly empty buffer or playback errors
+     * and back up after a stable period which grows when the bitrate keeps flapping
+     * Network type changes are forwarded to the player and cap the bitrate to normal on mobile networks
+     * Emits every decision after it has been applied, the helper runs while subscribed
+     */
+    @CheckResult @NonNull
+    public static Observable<BitrateDecision> with(@NonNull final Context context, @NonNull final RxSpotifyPlayer player) {
+        checkNotNull(context, "context == null");
+        checkNotNull(player, "player == null");
+        return Observable.defer(() -> {
+            PlaybackBitrate bitrate = player.getPlaybackBitrate();
+            // the sdk starts with the normal bitrate
+            final BitrateController controller = new BitrateController(
+                    bitrate != null ? bitrate : PlaybackBitrate.BITRATE_NORMAL);
+
+            Observable<BitrateDecision> underruns = player.underruns()
+                    .flatMapMaybe(controller::onUnderruns);
+
+            // buffering while paused or before the playback has started is no stall of the stream
+            Observable<BitrateDecision> rebuffering = player.buffering()
+                    .switchMap(buffering -> buffering && isPlaying(player)
+                            ? Observable.timer(REBUFFERING_THRESHOLD_MS, TimeUnit.MILLISECONDS)
+                            : Observable.<Long>empty())
+                    .filter(aLong -> isPlaying(player))
+                    .flatMapMaybe(aLong -> controller.onStarvation(BitrateDecision.Reason.REBUFFERING));
+
+            Observable<BitrateDecision> ticks = Observable.interval(TICK_INTERVAL_MS, TimeUnit.MILLISECONDS)
+                    .withLatestFrom(player.bufferLevel(TICK_INTERVAL_MS / 4, TimeUnit.MILLISECONDS),
+                            (aLong, level) -> level)
+                    .flatMapMaybe(level -> controller.onTick(level, isPlaying(player), player.isBuffering()));
+
+            Observable<BitrateDecision> errors = player.errors()
+                    .filter(AdaptiveBitrateHelper::isDeliveryError)
+                    .flatMapMaybe(error -> controller.onStarvation(BitrateDecision.Reason.PLAYBACK_ERROR));
+
+            Observable<BitrateDecision> network = networkChanges(context)
+                    .flatMapMaybe(info -> player.setConnectivity(info)
+                            .onErrorComplete()
+                            .andThen(controller.onNetworkChanged(info)));
+
+            // the controller takes over a decision only once the player has applied it
+            return Observable.merge(Arrays.asList(underruns, rebuffering, ticks, errors, network))
+                    .concatMap(decision -> player.setPlaybackBitrate(decision.getBitrate())
+                            .doOnComplete(() -> controller.onApplied(decision))
+                            .andThen(Observable.just(decision))
+                            .doOnError(throwable -> controller.onFailed())
+                            .onErrorResumeNext(Observable.<BitrateDecision>empty()));
+        });
+    }
+
+    private static boolean isPlaying(RxSpotifyPlayer player) {
+        // reads the packed state so the timer threads do not allocate
+        return PlaybackSnapshot.isPlaying(player.getPlaybackSnapshot());
+    }
+
+    private static boolean isDeliveryError(Error error) {
+        return error == Error.kSpErrorGeneralPlaybackError || error == Error.kSpPrefetchDownloadFailed;
+    }
+
+    private static Observable<NetworkInfo> networkChanges(final Context context) {
+        return Observable.create(e -> {
+            final ConnectivityManager connectivityManager
+                    = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            final BroadcastReceiver receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+                    if (info != null && !e.isDisposed()) {
+                        e.onNext(info);
+                    }
+                }
+            };
+
+            // the sticky broadcast delivers the current network right away
+            context.registerReceiver(receiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            e.setCancellable(() -> {
+                try {
+                    context.unregisterReceiver(receiver);
+                } catch (IllegalArgumentException e1) {
+                    e1.printStackTrace(); // catch error
+                }
+            });
+        });
+    }
+
+    /**
+     * Bitrate state machine, the signals arrive on different threads
+     */
+    private static final class BitrateController {
+
+        private int current;
+        private int ceiling = LADDER.length - 1;
+        private int networkType = -1;
+        // a decision is being applied to the player
+        private boolean changing;
+
+        private int underrunCount;
+        private long underrunWindowStart;
+        private int lowBufferTicks;
+
+        private long stablePeriod = STABLE_PERIOD_MS;
+        private long lastStarvation;
+        private long lastChange;
+        private long lastStepUp = Long.MIN_VALUE / 2;
+        private long lastStepDown = Long.MIN_VALUE / 2;
+
+        private BitrateController(PlaybackBitrate bitrate) {
+            current = indexOf(bitrate);
+            lastStarvation = lastChange = SystemClock.elapsedRealtime();
+        }
+
+        synchronized Maybe<BitrateDecision> onUnderruns(int count) {
+            long now = SystemClock.elapsedRealtime();
+            if (now - underrunWindowStart > UNDERRUN_WINDOW_MS) {
+                underrunWindowStart = now;
+                underrunCount = 0;
+            }
+            underrunCount += count;
+            if (underrunCount < UNDERRUN_THRESHOLD) return Maybe.empty();
+            return onStarvation(BitrateDecision.Reason.UNDERRUNS);
+        }
+
+        synchronized Maybe<BitrateDecision> onTick(float bufferLevel, boolean playing, boolean buffering) {
+            if (changing) return Maybe.empty();
+            if (current > ceiling) {
+                // the cap of the network could not be applied yet
+                return change(BitrateDecision.Reason.NETWORK_CHANGED, ceiling, SystemClock.elapsedRealtime());
+            }
+
+            // only playback says something about the health of the stream
+            if (!playing) {
+                lowBufferTicks = 0;
+                return Maybe.empty();
+            }
+
+            if (!buffering && bufferLevel < LOW_BUFFER_LEVEL) {
+                if (++lowBufferTicks >= LOW_BUFFER_TICKS) {
+                    return onStarvation(BitrateDecision.Reason.LOW_BUFFER);
+                }
+                return Maybe.empty();
+            }
+            lowBufferTicks = 0;
+
+            long now = SystemClock.elapsedRealtime();
+            if (current < ceiling && now - lastStarvation >= stablePeriod && now - lastChange >= stablePeriod) {
+                if (now - lastStepDown > MAX_STABLE_PERIOD_MS) {
+                    // stable for long enough to forget the flapping
+                    stablePeriod = STABLE_PERIOD_MS;
+                }
+                lastStepUp = now;
+                return change(BitrateDecision.Reason.STABLE, current + 1, now);
+            }
+            return Maybe.empty();
+        }
+
+        synchronized Maybe<BitrateDecision> onStarvation(@NonNull BitrateDecision.Reason reason) {
+            long now = SystemClock.elapsedRealtime();
+            lastStarvation = now;
+            underrunCount = 0;
+            lowBufferTicks = 0;
+            if (changing || current == 0 || now - lastStepDown < STEP_DOWN_COOLDOWN_MS) return Maybe.empty();
+
+            if (now - lastStepUp < FLAPPING_WINDOW_MS) {
+                // the higher bitrate did not hold, wait longer before the next try
+                stablePeriod = Math.min(stablePeriod * 2, MAX_STABLE_PERIOD_MS);
+            }
+            lastStepDown = now;
+            return change(reason, current - 1, now);
+        }
+
+        synchronized Maybe<BitrateDecision> onNetworkChanged(@NonNull NetworkInfo info) {
+            if (!info.isConnected() || info.getType() == networkType) return Maybe.empty();
+            networkType = info.getType();
+
+            // the new network starts with a clean history
+            long now = SystemClock.elapsedRealtime();
+            underrunCount = 0;
+            lowBufferTicks = 0;
+            lastStarvation = now;
+            ceiling = isMobile(networkType) ? indexOf(PlaybackBitrate.BITRATE_NORMAL) : LADDER.length - 1;
+            if (!changing && current > ceiling) {
+                return change(BitrateDecision.Reason.NETWORK_CHANGED, ceiling, now);
+            }
+            return Maybe.empty();
+        }
+
+        /**
+         * Takes over the bitrate of the decision after the player has applied it
+         */
+        synchronized void onApplied(@NonNull BitrateDecision decision) {
+            current = indexOf(decision.getBitrate());
+            changing = false;
+        }
+
+        /**
+         * Keeps the current bitrate after the player failed to apply the decision
+         */
+        synchronized void onFailed() {
+            changing = false;
+        }
+
+        private Maybe<BitrateDecision> change(BitrateDecision.Reason reason, int index, long now) {
+            changing = true;
+            lastChange = now;
+            return Maybe.just(new BitrateDecision(reason, LADDER[current], LADDER[index], System.currentTimeMillis()));
+        }
+
+        private static boolean isMobile(int networkType) {
+            return networkType == ConnectivityManager.TYPE_MOBILE
+                    || networkType == ConnectivityManager.TYPE_WIMAX;
+        }
+
+        private static int indexOf(PlaybackBitrate bitrate) {
+            for (int i = 0; i < LADDER.length; i++) {
+                if (LADDER[i] == bitrate) return i;
+            }
+            return 1;
+        }
+    }
+}
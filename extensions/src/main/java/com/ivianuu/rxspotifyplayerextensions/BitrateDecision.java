@@ -0,0 +1,85 @@
+package com.ivianuu.rxspotifyplayerextensions;
+
+import android.support.annotation.NonNull;
+
+import com.spotify.sdk.android.player.PlaybackBitrate;
+
+/**
+ * Bitrate change made by the adaptive bitrate helper
+ */
+public final class BitrateDecision {
+
+    /**
+     * Why the bitrate has been changed
+     */
+    public enum Reason {
+        /**
+         * The audio track ran out of samples several times in a short period
+         */
+        UNDERRUNS,
+        /**
+         * The output had to wait for the buffer to fill for too long
+         */
+        REBUFFERING,
+        /**
+         * The buffer stayed nearly empty while playing
+         */
+        LOW_BUFFER,
+        /**
+         * The sdk failed to download or play audio
+         */
+        PLAYBACK_ERROR,
+        /**
+         * The network type changed and the bitrate is above what it allows
+         */
+        NETWORK_CHANGED,
+        /**
+         * There was no starvation for a while
+         */
+        STABLE
+    }
+
+    private final Reason reason;
+    private final PlaybackBitrate previousBitrate;
+    private final PlaybackBitrate bitrate;
+    private final long timestamp;
+
+    BitrateDecision(@NonNull Reason reason, @NonNull PlaybackBitrate previousBitrate,
+                    @NonNull PlaybackBitrate bitrate, long timestamp) {
+        this.reason = reason;
+        this.previousBitrate = previousBitrate;
+        this.bitrate = bitrate;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns why the bitrate has been changed
+     */
+    @NonNull
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the bitrate before the change
+     */
+    @NonNull
+    public PlaybackBitrate getPreviousBitrate() {
+        return previousBitrate;
+    }
+
+    /**
+     * Returns the new bitrate
+     */
+    @NonNull
+    public PlaybackBitrate getBitrate() {
+        return bitrate;
+    }
+
+    /**
+     * Returns the time of the decision
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
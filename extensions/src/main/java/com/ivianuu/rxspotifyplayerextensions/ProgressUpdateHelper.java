@@ -1,15 +1,17 @@
 package com.ivianuu.rxspotifyplayerextensions;
 
 import android.support.annotation.CheckResult;
+import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 
 import com.ivianuu.rxspotifyplayer.PlaybackState;
+import com.ivianuu.rxspotifyplayer.RxSpotifyPlayer;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Observable;
-import io.reactivex.ObservableEmitter;
-import io.reactivex.ObservableOnSubscribe;
 
 import static com.ivianuu.rxspotifyplayer.Preconditions.checkNotNull;
 
@@ -18,43 +20,81 @@ import static com.ivianuu.rxspotifyplayer.Preconditions.checkNotNull;
  */
 public final class ProgressUpdateHelper {
 
-    private ProgressUpdateHelper() {
-        // no instances
+    private static final long DEFAULT_INTERVAL_MS = 1000;
+
+    private final RxSpotifyPlayer player;
+    // shared tickers per interval in nanos
+    private final Map<Long, Observable<PlaybackProgress>> tickers = new HashMap<>();
+
+    private ProgressUpdateHelper(RxSpotifyPlayer player) {
+        this.player = player;
+    }
+
+    /**
+     * Returns a new progress update helper, its tickers are shared by all subscribers of this helper
+     */
+    @NonNull
+    public static ProgressUpdateHelper create(@NonNull RxSpotifyPlayer player) {
+        checkNotNull(player, "player == null");
+        return new ProgressUpdateHelper(player);
     }
 
     /**
-     * Returns an observable which loops in a 1 second interval
+     * Returns an observable which loops in a 1 second interval starting after the first second
      */
     @CheckResult @NonNull
     public static Observable<PlaybackProgress> from(@NonNull final Observable<PlaybackState> playbackStateObservable) {
         checkNotNull(playbackStateObservable, "playbackStateObservable == null");
-        return Observable.create(new ObservableOnSubscribe<PlaybackProgress>() {
-
-            private PlaybackState playbackState;
-
-            @Override
-            public void subscribe(@NonNull final ObservableEmitter<PlaybackProgress> e) throws Exception {
-                // subscribe
-                playbackStateObservable
-                        .takeUntil(playbackState -> {
-                            return e.isDisposed(); // complete if disposed
-                        })
-                        .subscribe(newState -> {
-                            playbackState = newState; // update playback state
-                        });
-
-                // loop
-                // pass to emitter
-                Observable.interval(1000, TimeUnit.MILLISECONDS)
-                        .takeUntil(aLong -> {
-                            return e.isDisposed(); // complete if disposed
-                        })
-                        .map(aLong -> {
-                            // create object
-                            return new PlaybackProgress(playbackState.getDuration(), playbackState.getEstimatedProgress());
-                        })
-                        .subscribe(e::onNext);
+        return Observable.interval(DEFAULT_INTERVAL_MS, TimeUnit.MILLISECONDS)
+                .withLatestFrom(playbackStateObservable, (aLong, playbackState) -> new PlaybackProgress(
+                        playbackState.getDuration(), playbackState.getEstimatedProgress()));
+    }
+
+    /**
+     * Returns the shared progress ticker which loops in a 1 second interval
+     */
+    @CheckResult @NonNull
+    public Observable<PlaybackProgress> progress() {
+        return progress(DEFAULT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the shared progress ticker for the interval
+     * The ticker emits right away, stops while paused and is disposed once the last subscriber is gone
+     */
+    @CheckResult @NonNull
+    public Observable<PlaybackProgress> progress(@IntRange(from = 1) long interval, @NonNull TimeUnit unit) {
+        checkNotNull(unit, "unit == null");
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+
+        long intervalNanos = unit.toNanos(interval);
+        synchronized (tickers) {
+            Observable<PlaybackProgress> ticker = tickers.get(intervalNanos);
+            if (ticker == null) {
+                ticker = ticker(intervalNanos, TimeUnit.NANOSECONDS)
+                        .replay(1)
+                        .refCount();
+                tickers.put(intervalNanos, ticker);
             }
-        });
+            return ticker;
+        }
+    }
+
+    private Observable<PlaybackProgress> ticker(long interval, TimeUnit unit) {
+        return player.playbackState()
+                .switchMap(playbackState -> {
+                    if (playbackState.isPlaying()) {
+                        // loop while playing
+                        return Observable.interval(0, interval, unit)
+                                .map(aLong -> new PlaybackProgress(
+                                        playbackState.getDuration(), playbackState.getEstimatedProgress()));
+                    } else {
+                        // the progress does not change until we play again
+                        return Observable.just(new PlaybackProgress(
+                                playbackState.getDuration(), playbackState.getProgress()));
+                    }
+                });
     }
 }
@@ -0,0 +1,90 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.functions.Function;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the time until the audio of the start position is played
+ * for a single play at the position and for a play followed by a seek
+ *
+ * Run with -e clientId <client id> -e accessToken <token> of a premium account,
+ * the test is skipped without them
+ */
+@RunWith(AndroidJUnit4.class)
+public class TimeToFirstAudioTest {
+
+    private static final String TAG = "TimeToFirstAudioTest";
+
+    private static final String URI = "spotify:track:5atzkSaRuwgXiPDRi9qyKz";
+    private static final int POSITION = 180000;
+    private static final int RUNS = 5;
+    private static final long TIMEOUT_MS = 30000;
+
+    private String clientId;
+    private String accessToken;
+
+    @Before
+    public void setUp() {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        clientId = arguments.getString("clientId");
+        accessToken = arguments.getString("accessToken");
+        assumeTrue("clientId argument is missing", clientId != null);
+        assumeTrue("accessToken argument is missing", accessToken != null);
+    }
+
+    @Test
+    public void playAtPositionStartsFasterThanPlayAndSeek() throws Exception {
+        long playAtPosition = 0;
+        long playAndSeek = 0;
+        for (int i = 0; i < RUNS; i++) {
+            playAtPosition += measure(player -> player.play(URI, 0, POSITION));
+            playAndSeek += measure(player -> player.play(URI).andThen(player.seekTo(POSITION)));
+        }
+        playAtPosition /= RUNS;
+        playAndSeek /= RUNS;
+
+        Log.d(TAG, "play at position " + TimeUnit.NANOSECONDS.toMillis(playAtPosition)
+                + " ms, play and seek " + TimeUnit.NANOSECONDS.toMillis(playAndSeek) + " ms");
+        assertTrue("play at position took " + playAtPosition + " ns, play and seek " + playAndSeek + " ns",
+                playAtPosition < playAndSeek);
+    }
+
+    /**
+     * Returns the nanos from the start until the audio at the position has been played
+     */
+    private long measure(Function<RxSpotifyPlayer, Completable> start) throws Exception {
+        RxSpotifyPlayer player = RxSpotifyPlayer.create(InstrumentationRegistry.getTargetContext(), clientId);
+        try {
+            player.init(accessToken).blockingAwait();
+
+            long startNanos = System.nanoTime();
+            start.apply(player).blockingAwait();
+            // the audio position only counts what the output has actually played
+            while (player.getAudioPosition() < POSITION) {
+                if (System.nanoTime() - startNanos > TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS)) {
+                    fail("no audio after " + TIMEOUT_MS + " ms");
+                }
+                SystemClock.sleep(5);
+            }
+            return System.nanoTime() - startNanos;
+        } finally {
+            player.release();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.annotation.TargetApi;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+/**
+ * Grows the audio track buffer on underruns and shrinks it again after a stable period
+ * Only touched by the audio pump thread
+ */
+@TargetApi(Build.VERSION_CODES.N)
+final class AdaptiveBufferSizer {
+
+    /**
+     * Receives the decisions of the sizer
+     */
+    interface Listener {
+        void onBufferSizeDecision(@NonNull BufferSizeDecision decision);
+    }
+
+    private static final long STABLE_PERIOD_MS = 10000;
+    private static final float GROW_FACTOR = 1.5f;
+    private static final float SHRINK_FACTOR = 0.75f;
+
+    private final Listener listener;
+
+    private AudioTrack track;
+    private int minFrames;
+    private int maxFrames;
+    private int currentFrames;
+    private long lastChange;
+
+    AdaptiveBufferSizer(@NonNull Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Updates the buffer size of the track based on the new underruns
+     */
+    void update(@NonNull AudioTrack track, int minFrames, int newUnderruns, int underrunCount, long now) {
+        if (this.track != track) {
+            // start at the size of the profile
+            this.track = track;
+            this.minFrames = minFrames;
+            maxFrames = track.getBufferCapacityInFrames();
+            currentFrames = track.getBufferSizeInFrames();
+            lastChange = now;
+            if (currentFrames > minFrames) {
+                resize(BufferSizeDecision.Reason.STABLE, minFrames, underrunCount, now);
+            }
+            return;
+        }
+
+        if (newUnderruns > 0) {
+            if (currentFrames < maxFrames) {
+                resize(BufferSizeDecision.Reason.UNDERRUN,
+                        Math.min((int) (currentFrames * GROW_FACTOR), maxFrames), underrunCount, now);
+            }
+            lastChange = now; // a full buffer is not stable either
+        } else if (now - lastChange >= STABLE_PERIOD_MS && currentFrames > minFrames) {
+            resize(BufferSizeDecision.Reason.STABLE,
+                    Math.max((int) (currentFrames * SHRINK_FACTOR), minFrames), underrunCount, now);
+        }
+    }
+
+    private void resize(BufferSizeDecision.Reason reason, int frames, int underrunCount, long now) {
+        int actualFrames = track.setBufferSizeInFrames(frames);
+        lastChange = now;
+        if (actualFrames <= 0 || actualFrames == currentFrames) return;
+
+        int previousFrames = currentFrames;
+        currentFrames = actualFrames;
+        listener.onBufferSizeDecision(new BufferSizeDecision(
+                reason, previousFrames, actualFrames, underrunCount, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,120 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies a decimated mono mix of the played samples into a lock free triple buffer for visualizations
+ * The pump only pays for a volatile read while nobody is listening
+ */
+final class AnalysisTap {
+
+    static final int FRAME_SIZE = 1024;
+    private static final int HOP_SIZE = FRAME_SIZE / 4;
+    private static final int TARGET_SAMPLE_RATE = 22050;
+    private static final int DIRTY = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final AtomicInteger listeners = new AtomicInteger();
+
+    // triple buffer, the middle index and the dirty flag live in the state
+    private final float[][] frames = new float[3][FRAME_SIZE];
+    private final long[] sequences = new long[3];
+    private final AtomicInteger state = new AtomicInteger(1);
+    private volatile int frameSampleRate;
+
+    // only touched by the audio pump thread
+    private final float[] history = new float[FRAME_SIZE];
+    private int back = 0;
+    private int historyPosition;
+    private int sinceLastFrame;
+    private int sampleRate;
+    private int decimation = 1;
+    private long accumulator;
+    private int accumulated;
+    private long sequence;
+    private boolean active;
+
+    // only touched by readers under the lock
+    private int front = 2;
+
+    /**
+     * Starts tapping until {@link #release()} is called
+     */
+    void acquire() {
+        listeners.incrementAndGet();
+    }
+
+    void release() {
+        listeners.decrementAndGet();
+    }
+
+    /**
+     * Called by the pump with every processed block
+     */
+    void write(@NonNull short[] samples, int count, int sampleRate, int channels) {
+        if (listeners.get() == 0) {
+            active = false;
+            return;
+        }
+        if (!active || sampleRate != this.sampleRate) {
+            // start over, the history is stale or has another rate
+            active = true;
+            this.sampleRate = sampleRate;
+            decimation = Math.max(sampleRate / TARGET_SAMPLE_RATE, 1);
+            frameSampleRate = sampleRate / decimation;
+            accumulator = 0;
+            accumulated = 0;
+            sinceLastFrame = 0;
+        }
+
+        float scale = 1f / (decimation * channels * 32768f);
+        for (int i = 0; i + channels <= count; i += channels) {
+            for (int c = 0; c < channels; c++) {
+                accumulator += samples[i + c];
+            }
+            if (++accumulated < decimation) continue;
+
+            // averaging the frames is a cheap low pass before the decimation
+            history[historyPosition] = accumulator * scale;
+            historyPosition = (historyPosition + 1) & (FRAME_SIZE - 1);
+            accumulator = 0;
+            accumulated = 0;
+
+            if (++sinceLastFrame == HOP_SIZE) {
+                sinceLastFrame = 0;
+                publish();
+            }
+        }
+    }
+
+    private void publish() {
+        float[] frame = frames[back];
+        int firstPart = FRAME_SIZE - historyPosition;
+        System.arraycopy(history, historyPosition, frame, 0, firstPart);
+        System.arraycopy(history, 0, frame, firstPart, historyPosition);
+        sequences[back] = ++sequence;
+
+        // swap the back buffer with the middle one
+        back = state.getAndSet(back | DIRTY) & INDEX_MASK;
+    }
+
+    /**
+     * Copies the latest frame into the target and returns its sequence or 0 if there is none yet
+     */
+    synchronized long read(@NonNull float[] target) {
+        if ((state.get() & DIRTY) != 0) {
+            front = state.getAndSet(front) & INDEX_MASK;
+        }
+        System.arraycopy(frames[front], 0, target, 0, FRAME_SIZE);
+        return sequences[front];
+    }
+
+    /**
+     * Returns the sample rate of the frames
+     */
+    int getFrameSampleRate() {
+        return frameSampleRate;
+    }
+}
@@ -0,0 +1,113 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Derives the playback position from the frames played by the audio output
+ *
+ * The clock is anchored to the position reported by the sdk and advances
+ * with the playback head of the audio track. It never goes backwards between two anchors.
+ * Every anchor belongs to a flush count, the played frames restart with each flush
+ * so an anchor of an older flush count is ignored and one of a newer count is kept until the flush arrives.
+ */
+final class AudioClock {
+
+    private final VolumeAudioController audioController;
+
+    private boolean anchored;
+    private long anchorPosition;
+    private long anchorFrames;
+    private int anchorFlushCount;
+    private long lastPosition = -1;
+
+    private long pendingPosition = -1;
+    private int pendingFlushCount;
+    private boolean flushAnchored;
+
+    AudioClock(@NonNull VolumeAudioController audioController) {
+        this.audioController = audioController;
+    }
+
+    /**
+     * Anchors the clock to the position in ms reported by the sdk
+     * The sdk counts delivered samples so the frames which are still buffered have not been played yet
+     */
+    synchronized void anchor(long position) {
+        // read before the frames so both belong to the same flush
+        int flushCount = audioController.getFlushCount();
+        int sampleRate = audioController.getSampleRate();
+        long bufferedMs = sampleRate > 0 ? audioController.getBufferedFrames() * 1000 / sampleRate : 0;
+        if (pendingPosition >= 0 && flushCount - pendingFlushCount >= 0) {
+            // a report after the flush is more recent
+            pendingPosition = -1;
+        }
+        // negative until the buffered audio of a previous track has been played out
+        setAnchor(position - bufferedMs, audioController.getPlayedFrames(), flushCount);
+    }
+
+    /**
+     * Anchors the position in ms of the first frame after the flush with the count
+     * The flush may have happened already or may still be ahead
+     */
+    synchronized void anchorFlush(long position, int flushCount) {
+        pendingPosition = position;
+        pendingFlushCount = flushCount;
+        applyPendingAnchor(audioController.getFlushCount());
+    }
+
+    /**
+     * Re-anchors the clock at the start of a new track which was delivered without a flush
+     */
+    synchronized void onTrackChanged() {
+        int flushCount = audioController.getFlushCount();
+        applyPendingAnchor(flushCount);
+        if (pendingPosition >= 0 || (flushAnchored && anchorFlushCount == flushCount)) {
+            // the track has been started by a play request whose position is anchored already
+            return;
+        }
+        anchor(0);
+    }
+
+    /**
+     * Returns the position in ms or -1 if unknown
+     */
+    synchronized long getPosition() {
+        int flushCount = audioController.getFlushCount();
+        applyPendingAnchor(flushCount);
+        if (!anchored) return -1;
+
+        int sampleRate = audioController.getSampleRate();
+        if (sampleRate <= 0 || flushCount != anchorFlushCount) {
+            // the frames since the flush belong to a position we have not been told yet
+            return lastPosition;
+        }
+
+        long frames = audioController.getPlayedFrames() - anchorFrames;
+        long position = Math.max(anchorPosition + frames * 1000 / sampleRate, 0);
+        if (position > lastPosition) {
+            lastPosition = position;
+        }
+
+        return lastPosition;
+    }
+
+    private void applyPendingAnchor(int flushCount) {
+        if (pendingPosition < 0 || flushCount - pendingFlushCount < 0) return;
+        if (flushCount == pendingFlushCount) {
+            // the played frames have restarted at the pending position
+            setAnchor(pendingPosition, 0, flushCount);
+            flushAnchored = true;
+        }
+        // otherwise it has been flushed again before we saw it
+        pendingPosition = -1;
+    }
+
+    private void setAnchor(long position, long frames, int flushCount) {
+        anchored = true;
+        anchorPosition = position;
+        anchorFrames = frames;
+        anchorFlushCount = flushCount;
+        flushAnchored = false;
+        lastPosition = Math.max(position, 0);
+    }
+}
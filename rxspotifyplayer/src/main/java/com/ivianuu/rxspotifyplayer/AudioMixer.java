@@ -0,0 +1,229 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sums the audio of several players into a single audio track
+ * Each player keeps its own volume which acts as the gain of its session
+ */
+public final class AudioMixer {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+    private static final int BLOCK_SAMPLES = 1024 * CHANNELS;
+    private static final long STARVED_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final MixerSession[] EMPTY = new MixerSession[0];
+
+    private final Object lock = new Object();
+    // copy on write so the mixer thread never takes the lock
+    private volatile MixerSession[] sessions = EMPTY;
+    @Nullable
+    private volatile MixerThread thread;
+    // frames written to the track but not played yet
+    private volatile long latencyFrames;
+
+    private AudioMixer() {
+    }
+
+    /**
+     * Returns a new audio mixer
+     */
+    @NonNull
+    public static AudioMixer create() {
+        return new AudioMixer();
+    }
+
+    /**
+     * Returns the number of players which are currently mixed
+     */
+    public int getSessionCount() {
+        return sessions.length;
+    }
+
+    /**
+     * Returns whether the mixer can take audio of this format, other formats use their own track
+     */
+    boolean accepts(int sampleRate, int channels) {
+        return sampleRate == SAMPLE_RATE && channels == CHANNELS;
+    }
+
+    @NonNull
+    MixerSession openSession(@NonNull Runnable onSpaceAvailable) {
+        MixerSession session = new MixerSession(this, onSpaceAvailable);
+        synchronized (lock) {
+            MixerSession[] sessions = this.sessions;
+            MixerSession[] newSessions = Arrays.copyOf(sessions, sessions.length + 1);
+            newSessions[sessions.length] = session;
+            this.sessions = newSessions;
+
+            if (thread == null) {
+                MixerThread thread = new MixerThread();
+                this.thread = thread;
+                thread.start();
+            }
+        }
+        return session;
+    }
+
+    void closeSession(@NonNull MixerSession session) {
+        synchronized (lock) {
+            MixerSession[] sessions = this.sessions;
+            int index = Arrays.asList(sessions).indexOf(session);
+            if (index == -1) return;
+
+            MixerSession[] newSessions = new MixerSession[sessions.length - 1];
+            System.arraycopy(sessions, 0, newSessions, 0, index);
+            System.arraycopy(sessions, index + 1, newSessions, index, sessions.length - index - 1);
+            this.sessions = newSessions;
+
+            // the track is released with the last session
+            if (newSessions.length == 0 && thread != null) {
+                thread.quit();
+                thread = null;
+            }
+        }
+    }
+
+    void signal() {
+        MixerThread thread = this.thread;
+        if (thread != null) {
+            thread.signal();
+        }
+    }
+
+    long getLatencyFrames() {
+        return latencyFrames;
+    }
+
+    /**
+     * Mixes the playing sessions block by block, the blocking track write paces it
+     */
+    private final class MixerThread extends Thread {
+
+        private final int[] mix = new int[BLOCK_SAMPLES];
+        private final short[] input = new short[BLOCK_SAMPLES];
+        private final short[] output = new short[BLOCK_SAMPLES];
+        @Nullable
+        private AudioTrack track;
+        private long writtenFrames;
+        private volatile boolean running = true;
+
+        private MixerThread() {
+            super("RxSpotifyPlayer-AudioMixer");
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+
+            while (running) {
+                boolean anyPlaying = false;
+                int mixed = BLOCK_SAMPLES;
+                for (MixerSession session : sessions) {
+                    // frees the space of stale samples of a seek or track change, also while paused
+                    session.dropFlushedSamples();
+                    if (!session.isPlaying()) continue;
+                    anyPlaying = true;
+                    // the sessions advance together so none of them falls behind the others
+                    mixed = Math.min(mixed, session.buffer.size());
+                }
+                mixed -= mixed % CHANNELS;
+
+                if (!anyPlaying) {
+                    if (track != null) {
+                        track.pause();
+                    }
+                    waitForPlayingSession();
+                    continue;
+                }
+                if (mixed == 0) {
+                    // a playing session without data is rebuffering and holds back the others
+                    park(STARVED_WAIT_NANOS);
+                    continue;
+                }
+
+                Arrays.fill(mix, 0, mixed, 0);
+                for (MixerSession session : sessions) {
+                    if (!session.isPlaying()) continue;
+                    // a session which started playing since the sizing may have less
+                    int count = Math.min(session.buffer.peek(input), mixed);
+                    count -= count % CHANNELS;
+                    if (count == 0) continue;
+                    session.buffer.remove(count);
+                    for (int i = 0; i < count; i++) {
+                        mix[i] += input[i];
+                    }
+                    session.onConsumed(count / CHANNELS);
+                }
+
+                for (int i = 0; i < mixed; i++) {
+                    output[i] = (short) Math.max(Short.MIN_VALUE, Math.min(mix[i], Short.MAX_VALUE));
+                }
+                write(output, mixed);
+            }
+
+            if (track != null) {
+                track.release();
+                track = null;
+            }
+            latencyFrames = 0;
+        }
+
+        private void write(short[] samples, int count) {
+            if (track == null) {
+                int channelConfig = AudioFormat.CHANNEL_OUT_STEREO;
+                int bufferSize = AudioTrack.getMinBufferSize(SAMPLE_RATE, channelConfig, 2) * 2;
+                track = new AudioTrack(AudioManager.STREAM_MUSIC, SAMPLE_RATE, channelConfig, 2, bufferSize, 1);
+                if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                    track.release();
+                    track = null;
+                    park(STARVED_WAIT_NANOS);
+                    return;
+                }
+            }
+            if (track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                track.play();
+            }
+
+            int written = track.write(samples, 0, count);
+            if (written > 0) {
+                writtenFrames += written / CHANNELS;
+            }
+            long headFrames = track.getPlaybackHeadPosition() & 0xFFFFFFFFL; // unsigned
+            latencyFrames = Math.max(writtenFrames - headFrames, 0);
+        }
+
+        private void park(long nanos) {
+            LockSupport.parkNanos(this, nanos);
+        }
+
+        private void waitForPlayingSession() {
+            // a play after this check leaves a permit so the park below returns right away
+            boolean anyPlaying = false;
+            for (MixerSession session : sessions) {
+                anyPlaying |= session.isPlaying();
+            }
+            if (running && !anyPlaying) {
+                LockSupport.park(this);
+            }
+        }
+
+        private void signal() {
+            LockSupport.unpark(this);
+        }
+
+        private void quit() {
+            running = false;
+            LockSupport.unpark(this);
+        }
+    }
+}
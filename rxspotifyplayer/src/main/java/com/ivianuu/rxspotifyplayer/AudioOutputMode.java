@@ -0,0 +1,16 @@
+package com.ivianuu.rxspotifyplayer;
+
+/**
+ * How samples are written to the audio output
+ */
+public enum AudioOutputMode {
+    /**
+     * Blocking writes of the sample array
+     */
+    BLOCKING,
+    /**
+     * Non blocking writes from a reusable direct buffer which are driven by position notifications
+     * Requires api 21 and falls back to {@link #BLOCKING} on older devices
+     */
+    NON_BLOCKING
+}
@@ -0,0 +1,30 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Processes interleaved 16 bit pcm blocks in place before they are written to the audio output
+ * All methods are called on the audio thread and must not block or allocate in {@link #process(short[], int)}
+ */
+public interface AudioProcessor {
+
+    /**
+     * Largest number of samples passed to {@link #process(short[], int)}
+     */
+    int MAX_BLOCK_SAMPLES = 4096;
+
+    /**
+     * Called before the first block and whenever the format or the processor chain changes
+     */
+    void configure(int sampleRate, int channels);
+
+    /**
+     * Processes the first count samples in place
+     */
+    void process(@NonNull short[] samples, int count);
+
+    /**
+     * Called after a flush, drop any buffered audio or filter state
+     */
+    void reset();
+}
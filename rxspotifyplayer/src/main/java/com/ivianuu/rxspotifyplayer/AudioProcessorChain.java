@@ -0,0 +1,68 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Runs the audio processors in order
+ * Processors are added and removed copy on write so the audio thread never takes a lock
+ */
+final class AudioProcessorChain {
+
+    private static final AudioProcessor[] EMPTY = new AudioProcessor[0];
+
+    private volatile AudioProcessor[] processors = EMPTY;
+
+    // only touched by the audio thread
+    private AudioProcessor[] configuredProcessors = EMPTY;
+    private int sampleRate;
+    private int channels;
+
+    synchronized void add(@NonNull AudioProcessor processor) {
+        AudioProcessor[] processors = this.processors;
+        AudioProcessor[] newProcessors = new AudioProcessor[processors.length + 1];
+        System.arraycopy(processors, 0, newProcessors, 0, processors.length);
+        newProcessors[processors.length] = processor;
+        this.processors = newProcessors;
+    }
+
+    synchronized void remove(@NonNull AudioProcessor processor) {
+        AudioProcessor[] processors = this.processors;
+        for (int i = 0; i < processors.length; i++) {
+            if (processors[i] == processor) {
+                AudioProcessor[] newProcessors = new AudioProcessor[processors.length - 1];
+                System.arraycopy(processors, 0, newProcessors, 0, i);
+                System.arraycopy(processors, i + 1, newProcessors, i, processors.length - i - 1);
+                this.processors = newProcessors;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs all processors and configures them first if the chain or the format has changed
+     */
+    void process(@NonNull short[] samples, int count, int sampleRate, int channels) {
+        AudioProcessor[] processors = this.processors;
+        if (processors != configuredProcessors || sampleRate != this.sampleRate || channels != this.channels) {
+            for (AudioProcessor processor : processors) {
+                processor.configure(sampleRate, channels);
+            }
+            configuredProcessors = processors;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+        }
+
+        for (AudioProcessor processor : processors) {
+            processor.process(samples, count);
+        }
+    }
+
+    /**
+     * Resets all configured processors
+     */
+    void reset() {
+        for (AudioProcessor processor : configuredProcessors) {
+            processor.reset();
+        }
+    }
+}
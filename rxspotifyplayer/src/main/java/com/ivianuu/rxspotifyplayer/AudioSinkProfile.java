@@ -0,0 +1,31 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.media.AudioTrack;
+
+/**
+ * Buffer sizes and performance mode of the audio output
+ */
+public enum AudioSinkProfile {
+    /**
+     * Small buffers and the low latency performance mode on api 26+
+     */
+    LOW_LATENCY(1, 1 << 15, AudioTrack.PERFORMANCE_MODE_LOW_LATENCY),
+    /**
+     * The default
+     */
+    BALANCED(2, 1 << 17, AudioTrack.PERFORMANCE_MODE_NONE),
+    /**
+     * Large buffers which need fewer wake ups and the power saving performance mode on api 26+
+     */
+    POWER_SAVING(8, 1 << 18, AudioTrack.PERFORMANCE_MODE_POWER_SAVING);
+
+    final int trackBufferMultiplier;
+    final int sampleBufferCapacity;
+    final int performanceMode;
+
+    AudioSinkProfile(int trackBufferMultiplier, int sampleBufferCapacity, int performanceMode) {
+        this.trackBufferMultiplier = trackBufferMultiplier;
+        this.sampleBufferCapacity = sampleBufferCapacity;
+        this.performanceMode = performanceMode;
+    }
+}
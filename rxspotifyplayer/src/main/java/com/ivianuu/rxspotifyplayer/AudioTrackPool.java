@@ -0,0 +1,80 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.media.AudioTrack;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps paused audio tracks keyed by sample rate and channels so format changes do not recreate them
+ */
+final class AudioTrackPool {
+
+    private static final int MAX_SIZE = 2;
+
+    private final List<Entry> entries = new ArrayList<>(MAX_SIZE + 1);
+
+    /**
+     * Returns a pooled track for the format or null
+     */
+    @Nullable
+    synchronized AudioTrack acquire(int sampleRate, int channels) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.sampleRate == sampleRate && entry.channels == channels) {
+                entries.remove(i);
+                return entry.track;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pauses, flushes and keeps the track, the least recently pooled track is released if the pool is full
+     */
+    void recycle(@NonNull AudioTrack track, int sampleRate, int channels) {
+        track.pause();
+        track.flush();
+
+        AudioTrack evicted = null;
+        synchronized (this) {
+            entries.add(new Entry(track, sampleRate, channels));
+            if (entries.size() > MAX_SIZE) {
+                evicted = entries.remove(0).track;
+            }
+        }
+
+        if (evicted != null) {
+            evicted.release();
+        }
+    }
+
+    /**
+     * Releases all pooled tracks
+     */
+    void clear() {
+        List<Entry> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(this.entries);
+            this.entries.clear();
+        }
+
+        for (Entry entry : entries) {
+            entry.track.release();
+        }
+    }
+
+    private static final class Entry {
+        private final AudioTrack track;
+        private final int sampleRate;
+        private final int channels;
+
+        private Entry(AudioTrack track, int sampleRate, int channels) {
+            this.track = track;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+import static com.ivianuu.rxspotifyplayer.Preconditions.checkNotNull;
+
+/**
+ * Parametric equalizer made of biquad filters
+ * Bands can be changed from any thread and are picked up with the next block
+ */
+public final class BiquadEqualizer implements AudioProcessor {
+
+    /**
+     * Shape of a band
+     */
+    public enum BandType {
+        PEAKING, LOW_SHELF, HIGH_SHELF
+    }
+
+    private final int bandCount;
+    private final BandType[] types;
+    private final float[] frequencies;
+    private final float[] gains;
+    private final float[] qs;
+    private volatile int version;
+
+    // only touched by the audio thread
+    private final float[] coefficients;
+    private final boolean[] active;
+    private int appliedVersion = -1;
+    private int sampleRate;
+    private int channels;
+    private float[] state = new float[0];
+    private final float[] work = new float[MAX_BLOCK_SAMPLES];
+
+    private BiquadEqualizer(int bandCount) {
+        this.bandCount = bandCount;
+        types = new BandType[bandCount];
+        Arrays.fill(types, BandType.PEAKING);
+        frequencies = new float[bandCount];
+        Arrays.fill(frequencies, 1000f);
+        gains = new float[bandCount];
+        qs = new float[bandCount];
+        Arrays.fill(qs, 0.707f);
+        coefficients = new float[bandCount * 5];
+        active = new boolean[bandCount];
+    }
+
+    /**
+     * Returns a new equalizer with flat bands
+     */
+    @NonNull
+    public static BiquadEqualizer create(@IntRange(from = 1) int bandCount) {
+        if (bandCount < 1) {
+            throw new IllegalArgumentException("bandCount must be positive");
+        }
+        return new BiquadEqualizer(bandCount);
+    }
+
+    /**
+     * Returns the number of bands
+     */
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    /**
+     * Sets the band at the index, a gain of 0 disables it
+     */
+    public void setBand(int band, @NonNull BandType type, float frequency, float gainDb, float q) {
+        checkNotNull(type, "type == null");
+        if (band < 0 || band >= bandCount) {
+            throw new IndexOutOfBoundsException("band " + band + " of " + bandCount);
+        }
+        if (frequency <= 0f || q <= 0f) {
+            throw new IllegalArgumentException("frequency and q must be positive");
+        }
+        synchronized (this) {
+            types[band] = type;
+            frequencies[band] = frequency;
+            gains[band] = gainDb;
+            qs[band] = q;
+            version++;
+        }
+    }
+
+    @Override
+    public void configure(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        state = new float[bandCount * channels * 2];
+        appliedVersion = -1;
+    }
+
+    @Override
+    public void process(@NonNull short[] samples, int count) {
+        int version = this.version;
+        if (version != appliedVersion) {
+            appliedVersion = version;
+            updateCoefficients();
+        }
+
+        boolean anyActive = false;
+        for (int b = 0; b < bandCount; b++) {
+            anyActive |= active[b];
+        }
+        if (!anyActive) return;
+
+        float[] work = this.work;
+        for (int i = 0; i < count; i++) {
+            work[i] = samples[i];
+        }
+
+        int channels = this.channels;
+        for (int b = 0; b < bandCount; b++) {
+            if (!active[b]) continue;
+            int k = b * 5;
+            float b0 = coefficients[k];
+            float b1 = coefficients[k + 1];
+            float b2 = coefficients[k + 2];
+            float a1 = coefficients[k + 3];
+            float a2 = coefficients[k + 4];
+
+            for (int c = 0; c < channels; c++) {
+                int s = (b * channels + c) * 2;
+                float z1 = state[s];
+                float z2 = state[s + 1];
+                // transposed direct form II
+                for (int i = c; i < count; i += channels) {
+                    float x = work[i];
+                    float y = b0 * x + z1;
+                    z1 = b1 * x - a1 * y + z2;
+                    z2 = b2 * x - a2 * y;
+                    work[i] = y;
+                }
+                state[s] = z1;
+                state[s + 1] = z2;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            samples[i] = clamp(work[i]);
+        }
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(state, 0f);
+    }
+
+    private void updateCoefficients() {
+        // no lock, a change during the update bumps the version again and is applied with the next block
+        for (int b = 0; b < bandCount; b++) {
+            float gain = gains[b];
+            active[b] = gain != 0f && sampleRate > 0;
+            if (!active[b]) continue;
+
+            // rbj audio eq cookbook
+            double a = Math.pow(10, gain / 40.0);
+            double w0 = 2 * Math.PI * Math.min(frequencies[b], sampleRate * 0.45f) / sampleRate;
+            double cos = Math.cos(w0);
+            double alpha = Math.sin(w0) / (2 * qs[b]);
+            double sqrtA = 2 * Math.sqrt(a) * alpha;
+
+            double b0, b1, b2, a0, a1, a2;
+            switch (types[b]) {
+                case LOW_SHELF:
+                    b0 = a * ((a + 1) - (a - 1) * cos + sqrtA);
+                    b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                    b2 = a * ((a + 1) - (a - 1) * cos - sqrtA);
+                    a0 = (a + 1) + (a - 1) * cos + sqrtA;
+                    a1 = -2 * ((a - 1) + (a + 1) * cos);
+                    a2 = (a + 1) + (a - 1) * cos - sqrtA;
+                    break;
+                case HIGH_SHELF:
+                    b0 = a * ((a + 1) + (a - 1) * cos + sqrtA);
+                    b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                    b2 = a * ((a + 1) + (a - 1) * cos - sqrtA);
+                    a0 = (a + 1) - (a - 1) * cos + sqrtA;
+                    a1 = 2 * ((a - 1) - (a + 1) * cos);
+                    a2 = (a + 1) - (a - 1) * cos - sqrtA;
+                    break;
+                default:
+                    b0 = 1 + alpha * a;
+                    b1 = -2 * cos;
+                    b2 = 1 - alpha * a;
+                    a0 = 1 + alpha / a;
+                    a1 = -2 * cos;
+                    a2 = 1 - alpha / a;
+                    break;
+            }
+
+            int k = b * 5;
+            coefficients[k] = (float) (b0 / a0);
+            coefficients[k + 1] = (float) (b1 / a0);
+            coefficients[k + 2] = (float) (b2 / a0);
+            coefficients[k + 3] = (float) (a1 / a0);
+            coefficients[k + 4] = (float) (a2 / a0);
+        }
+    }
+
+    private static short clamp(float sample) {
+        if (sample > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (sample < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) sample;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Change of the audio output buffer size made by the adaptive buffer sizing
+ */
+public final class BufferSizeDecision {
+
+    /**
+     * Why the buffer size has been changed
+     */
+    public enum Reason {
+        /**
+         * The output ran out of samples
+         */
+        UNDERRUN,
+        /**
+         * There were no underruns for a while
+         */
+        STABLE
+    }
+
+    private final Reason reason;
+    private final int previousSizeInFrames;
+    private final int sizeInFrames;
+    private final int underrunCount;
+    private final long timestamp;
+
+    BufferSizeDecision(@NonNull Reason reason, int previousSizeInFrames, int sizeInFrames,
+                       int underrunCount, long timestamp) {
+        this.reason = reason;
+        this.previousSizeInFrames = previousSizeInFrames;
+        this.sizeInFrames = sizeInFrames;
+        this.underrunCount = underrunCount;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns why the size has been changed
+     */
+    @NonNull
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the size before the change
+     */
+    public int getPreviousSizeInFrames() {
+        return previousSizeInFrames;
+    }
+
+    /**
+     * Returns the new size
+     */
+    public int getSizeInFrames() {
+        return sizeInFrames;
+    }
+
+    /**
+     * Returns the underrun count of the audio track at the time of the decision
+     */
+    public int getUnderrunCount() {
+        return underrunCount;
+    }
+
+    /**
+     * Returns the time of the decision
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,216 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.spotify.sdk.android.player.Error;
+import com.spotify.sdk.android.player.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Serializes player operations and collapses superseded ones
+ *
+ * Only one operation is in flight at a time. A collapsible operation which is submitted
+ * while an operation of the same type is waiting at the end of the queue replaces it,
+ * the emitters of both receive the outcome of the operation which actually runs.
+ * An operation which the sdk does not answer in time fails so the ones behind it can run.
+ */
+final class CommandExecutor {
+
+    private static final long COMMAND_TIMEOUT_MS = 10000;
+
+    enum Type {
+        PLAY(false),
+        QUEUE(false),
+        NEXT(false),
+        PREVIOUS(false),
+        PLAYBACK(true), // pause and resume
+        SEEK(true),
+        CONNECTIVITY(true),
+        BITRATE(true);
+
+        final boolean collapsible;
+
+        Type(boolean collapsible) {
+            this.collapsible = collapsible;
+        }
+    }
+
+    /**
+     * Sdk call which reports its outcome to the callback
+     */
+    interface Action {
+        void run(@NonNull Player.OperationCallback callback);
+    }
+
+    private final MetricsDispatcher metrics;
+    private final ArrayDeque<Command> pending = new ArrayDeque<>();
+    @Nullable
+    private Command current;
+
+    CommandExecutor(@NonNull MetricsDispatcher metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Submits the action and reports its outcome to the emitter
+     */
+    void submit(@NonNull Type type, @NonNull String name, @NonNull Action action,
+                @Nullable Runnable onSuccess, @NonNull CompletableEmitter emitter) {
+        Command command;
+        synchronized (this) {
+            Command last = pending.peekLast();
+            if (type.collapsible && last != null && last.type == type) {
+                // the latest intent wins
+                last.name = name;
+                last.action = action;
+                last.onSuccess = onSuccess;
+                last.emitters.add(emitter);
+                return;
+            }
+
+            command = new Command(type, name, action, onSuccess);
+            command.emitters.add(emitter);
+            pending.add(command);
+
+            if (current != null) return; // will be started once the current one is done
+
+            command = pending.poll();
+            current = command;
+        }
+
+        execute(command);
+    }
+
+    /**
+     * Fails the current and all waiting operations
+     */
+    void clear(@NonNull Error error) {
+        List<Command> commands;
+        synchronized (this) {
+            commands = new ArrayList<>(pending.size() + 1);
+            if (current != null) {
+                commands.add(current);
+                current = null;
+            }
+            commands.addAll(pending);
+            pending.clear();
+        }
+
+        for (Command command : commands) {
+            if (command.markFinished()) {
+                command.dispatch(error, null);
+            }
+        }
+    }
+
+    private void execute(@NonNull Command command) {
+        command.startTime = System.nanoTime();
+        command.startDeadline();
+        try {
+            command.action.run(command);
+        } catch (RuntimeException e) {
+            command.finish(Error.kSpErrorFailed, e);
+        }
+    }
+
+    private void onCommandFinished(@NonNull Command command, @Nullable Error error, @Nullable Throwable cause) {
+        if (metrics.isEnabled()) {
+            metrics.onOperation(command.name, System.nanoTime() - command.startTime, error);
+        }
+
+        command.dispatch(error, cause);
+
+        Command next;
+        synchronized (this) {
+            if (current != command) return;
+            next = pending.poll();
+            current = next;
+        }
+
+        if (next != null) {
+            execute(next);
+        }
+    }
+
+    private final class Command implements Player.OperationCallback {
+
+        private final Type type;
+        private final List<CompletableEmitter> emitters = new ArrayList<>(1);
+        private String name;
+        private Action action;
+        private Runnable onSuccess;
+        private long startTime;
+        @Nullable
+        private Disposable deadline;
+        private boolean finished;
+
+        private Command(Type type, String name, Action action, Runnable onSuccess) {
+            this.type = type;
+            this.name = name;
+            this.action = action;
+            this.onSuccess = onSuccess;
+        }
+
+        @Override
+        public void onSuccess() {
+            finish(null, null);
+        }
+
+        @Override
+        public void onError(Error error) {
+            finish(error, null);
+        }
+
+        private void startDeadline() {
+            Disposable deadline = Completable.timer(COMMAND_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .subscribe(() -> finish(Error.kSpErrorFailed, null));
+            synchronized (this) {
+                if (finished) {
+                    deadline.dispose();
+                } else {
+                    this.deadline = deadline;
+                }
+            }
+        }
+
+        private void finish(@Nullable Error error, @Nullable Throwable cause) {
+            if (markFinished()) {
+                onCommandFinished(this, error, cause);
+            }
+        }
+
+        private synchronized boolean markFinished() {
+            if (finished) return false; // the sdk reported twice, too late or we have been cleared
+            finished = true;
+            if (deadline != null) {
+                deadline.dispose();
+                deadline = null;
+            }
+            return true;
+        }
+
+        private void dispatch(@Nullable Error error, @Nullable Throwable cause) {
+            if (error == null && onSuccess != null) {
+                onSuccess.run();
+            }
+
+            for (CompletableEmitter e : emitters) {
+                if (e.isDisposed()) continue;
+                if (error == null) {
+                    e.onComplete();
+                } else {
+                    e.onError(cause != null ? cause : new Throwable(error.name()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the beginning of the discarded samples on a flush and fades it out over the first samples of the new track
+ * The sdk thread requests the tail on a flush, capturing and mixing happen on the audio pump thread
+ */
+final class Crossfader {
+
+    // a flush only counts as a track change if the sdk reported one this close to it
+    private static final long TRACK_CHANGE_WINDOW_MS = 1000;
+    private static final int CURVE_SIZE = 1024;
+    // quarter sine, fading in with it and out with it reversed keeps the power constant
+    private static final float[] EQUAL_POWER_CURVE = new float[CURVE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= CURVE_SIZE; i++) {
+            EQUAL_POWER_CURVE[i] = (float) Math.sin(Math.PI / 2 * i / CURVE_SIZE);
+        }
+    }
+
+    private volatile long durationMs;
+    private volatile long lastTrackChange = Long.MIN_VALUE / 2;
+
+    // handed from the sdk thread to the pump and back without locks
+    private final AtomicReference<Tail> requestedTail = new AtomicReference<>();
+    private final AtomicReference<Tail> pendingTail = new AtomicReference<>();
+    private final AtomicReference<Tail> freeTail = new AtomicReference<>();
+
+    // only touched by the audio pump thread
+    @Nullable
+    private Tail currentTail;
+    private int position;
+
+    void setDuration(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    void onTrackChanged() {
+        lastTrackChange = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Clears the buffer and requests its beginning as the tail for the next track if crossfading is enabled
+     */
+    void clear(@NonNull SampleRingBuffer audioBuffer, int nextFlushCount, int sampleRate, int channels) {
+        // reuse the request the pump has not handled, the unused tail of the last flush or a returned one
+        Tail tail = requestedTail.getAndSet(null);
+        if (tail == null) {
+            tail = pendingTail.getAndSet(null);
+        }
+        if (tail == null) {
+            tail = freeTail.getAndSet(null);
+        }
+
+        long durationMs = this.durationMs;
+        if (durationMs <= 0 || sampleRate <= 0 || channels <= 0) {
+            if (tail != null) {
+                freeTail.set(tail);
+            }
+            audioBuffer.clear();
+            return;
+        }
+
+        int maxSamples = (int) Math.min(durationMs * sampleRate / 1000 * channels, audioBuffer.capacity());
+        if (tail == null || tail.samples.length < maxSamples) {
+            tail = new Tail(maxSamples);
+        }
+        tail.length = 0;
+        tail.maxSamples = maxSamples;
+        tail.flushCount = nextFlushCount;
+        tail.flushTime = SystemClock.elapsedRealtime();
+        tail.sampleRate = sampleRate;
+        tail.channels = channels;
+        // published before the clear so the pump sees the request together with the cleared samples
+        requestedTail.set(tail);
+        audioBuffer.clear();
+    }
+
+    /**
+     * Drops the cleared samples of the buffer and keeps the requested tail of them
+     * Called by the pump thread which is the only consumer of the buffer
+     */
+    void capture(@NonNull SampleRingBuffer audioBuffer) {
+        if (!audioBuffer.hasClearedSamples()) return;
+
+        Tail tail = requestedTail.getAndSet(null);
+        if (tail == null) {
+            audioBuffer.dropCleared();
+            return;
+        }
+
+        int length = audioBuffer.dropCleared(tail.samples, tail.maxSamples);
+        tail.length = length - length % tail.channels;
+        if (tail.length > 0) {
+            pendingTail.set(tail);
+        } else {
+            freeTail.set(tail);
+        }
+    }
+
+    /**
+     * Mixes the pending tail into the samples of the new track
+     */
+    void mix(@NonNull short[] samples, int count, int flushCount, int sampleRate, int channels) {
+        if (currentTail == null) {
+            Tail tail = pendingTail.getAndSet(null);
+            if (tail == null) return;
+            if (tail.flushCount != flushCount || tail.sampleRate != sampleRate || tail.channels != channels
+                    || Math.abs(lastTrackChange - tail.flushTime) > TRACK_CHANGE_WINDOW_MS) {
+                // a seek or a format change
+                freeTail.set(tail);
+                return;
+            }
+            currentTail = tail;
+            position = 0;
+        }
+
+        Tail tail = currentTail;
+        short[] tailSamples = tail.samples;
+        int length = tail.length;
+        int position = this.position;
+        int end = Math.min(count, length - position);
+        for (int i = 0; i < end; i++, position++) {
+            int curveIndex = (int) ((long) position * CURVE_SIZE / length);
+            float fadeIn = EQUAL_POWER_CURVE[curveIndex];
+            float fadeOut = EQUAL_POWER_CURVE[CURVE_SIZE - curveIndex];
+            float sample = samples[i] * fadeIn + tailSamples[position] * fadeOut;
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(sample, Short.MAX_VALUE));
+        }
+        this.position = position;
+
+        if (position >= length) {
+            cancel();
+        }
+    }
+
+    /**
+     * Stops the current crossfade
+     */
+    void cancel() {
+        Tail tail = currentTail;
+        if (tail != null) {
+            currentTail = null;
+            freeTail.set(tail);
+        }
+    }
+
+    /**
+     * Drops the buffers which are not in use
+     */
+    void trim() {
+        requestedTail.set(null);
+        pendingTail.set(null);
+        freeTail.set(null);
+    }
+
+    private static final class Tail {
+        private final short[] samples;
+        private int length;
+        private int maxSamples;
+        private int flushCount;
+        private long flushTime;
+        private int sampleRate;
+        private int channels;
+
+        private Tail(int capacity) {
+            samples = new short[capacity];
+        }
+    }
+}
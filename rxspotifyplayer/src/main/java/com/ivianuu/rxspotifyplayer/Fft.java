@@ -0,0 +1,72 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * In place iterative radix-2 fft with precomputed twiddle and bit reversal tables
+ */
+final class Fft {
+
+    private final int size;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] reversed;
+
+    Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two");
+        }
+        this.size = size;
+        cos = new float[size / 2];
+        sin = new float[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            cos[i] = (float) Math.cos(-2 * Math.PI * i / size);
+            sin[i] = (float) Math.sin(-2 * Math.PI * i / size);
+        }
+
+        reversed = new int[size];
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Transforms the complex input of the given arrays in place
+     */
+    void transform(@NonNull float[] re, @NonNull float[] im) {
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int half = 1; half < size; half <<= 1) {
+            int step = size / (half * 2);
+            for (int start = 0; start < size; start += half * 2) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cos[k * step];
+                    float wi = sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
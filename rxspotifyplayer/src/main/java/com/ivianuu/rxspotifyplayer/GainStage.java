@@ -0,0 +1,115 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Scales blocks of samples in place and ramps between gains to avoid clicks
+ * The target is written by any thread, everything else is only touched by the audio pump thread
+ */
+final class GainStage {
+
+    private static final int GAIN_SHIFT = 15;
+    private static final int UNITY_GAIN = 1 << GAIN_SHIFT;
+    // ramps move in steps of this many samples, must be even to keep stereo frames together
+    private static final int RAMP_CHUNK_SAMPLES = 64;
+    // exponential ramps can not reach zero so they end with a jump from here
+    private static final float MIN_EXPONENTIAL_GAIN = 0.001f;
+
+    private volatile float targetGain = 1f;
+    private volatile long rampMs = 50;
+    private volatile VolumeRamp ramp = VolumeRamp.LINEAR;
+
+    private float currentGain = 1f;
+    private float rampFrom = 1f;
+    private float rampTo = 1f;
+    private VolumeRamp rampCurve = VolumeRamp.LINEAR;
+    private int rampLength;
+    private int rampPosition;
+
+    void setTarget(float gain) {
+        targetGain = gain;
+    }
+
+    float getTarget() {
+        return targetGain;
+    }
+
+    void setRamp(long rampMs, @NonNull VolumeRamp ramp) {
+        this.rampMs = rampMs;
+        this.ramp = ramp;
+    }
+
+    /**
+     * Applies the gain to the samples without moving the ramp, call {@link #advance(int)} afterwards
+     */
+    void process(@NonNull short[] samples, int count, int sampleRate, int channels) {
+        float target = targetGain;
+        if (target != rampTo) {
+            startRamp(target, sampleRate, channels);
+        }
+
+        int offset = 0;
+        int position = rampPosition;
+        while (position < rampLength && offset < count) {
+            int end = Math.min(offset + RAMP_CHUNK_SAMPLES, count);
+            applyGain(samples, offset, end, toFixedPoint(gainAt(position)));
+            position += end - offset;
+            offset = end;
+        }
+
+        if (offset < count) {
+            float gain = position < rampLength ? gainAt(position) : rampTo;
+            applyGain(samples, offset, count, toFixedPoint(gain));
+        }
+    }
+
+    /**
+     * Moves the ramp forward by the processed samples
+     */
+    void advance(int count) {
+        if (rampPosition >= rampLength) return;
+        rampPosition += count;
+        if (rampPosition >= rampLength) {
+            currentGain = rampTo;
+        } else {
+            currentGain = gainAt(rampPosition);
+        }
+    }
+
+    private void startRamp(float target, int sampleRate, int channels) {
+        rampFrom = currentGain;
+        rampTo = target;
+        rampCurve = ramp;
+        rampPosition = 0;
+        long length = rampMs * sampleRate * channels / 1000;
+        rampLength = (int) Math.min(length, Integer.MAX_VALUE);
+        if (rampLength == 0) {
+            currentGain = target;
+        }
+    }
+
+    private float gainAt(int position) {
+        float progress = (float) position / rampLength;
+        if (rampCurve == VolumeRamp.EXPONENTIAL) {
+            float from = Math.max(rampFrom, MIN_EXPONENTIAL_GAIN);
+            float to = Math.max(rampTo, MIN_EXPONENTIAL_GAIN);
+            return (float) (from * Math.pow(to / from, progress));
+        } else {
+            return rampFrom + (rampTo - rampFrom) * progress;
+        }
+    }
+
+    private static int toFixedPoint(float gain) {
+        return Math.max(0, Math.min(Math.round(gain * UNITY_GAIN), UNITY_GAIN));
+    }
+
+    /**
+     * Plain counted loop over the array so the jit can vectorize it
+     */
+    private static void applyGain(short[] samples, int from, int to, int gain) {
+        if (gain == UNITY_GAIN) return;
+        for (int i = from; i < to; i++) {
+            samples[i] = (short) ((samples[i] * gain) >> GAIN_SHIFT);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The audio output has released its resources or has been restored
+ */
+public final class IdleTransition {
+
+    /**
+     * Direction of the transition
+     */
+    public enum Type {
+        /**
+         * The audio track has been released after the idle timeout
+         */
+        IDLE,
+        /**
+         * Audio is playing again after being idle
+         */
+        ACTIVE
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final long wakeUpNanos;
+
+    IdleTransition(@NonNull Type type, long timestamp, long wakeUpNanos) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.wakeUpNanos = wakeUpNanos;
+    }
+
+    /**
+     * Returns the direction of the transition
+     */
+    @NonNull
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the time of the transition
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns how long it took from the resume until audio was playing again, 0 for idle transitions
+     */
+    public long getWakeUpNanos() {
+        return wakeUpNanos;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.FloatRange;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log linear latency histogram in microseconds
+ *
+ * Every power of two range is split into 16 linear buckets
+ * which keeps the relative error of a recorded value below 6.25%.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong max;
+
+    LatencyHistogram() {
+        this(new AtomicLongArray(BUCKETS), new AtomicLong(), new AtomicLong());
+    }
+
+    private LatencyHistogram(AtomicLongArray counts, AtomicLong totalCount, AtomicLong max) {
+        this.counts = counts;
+        this.totalCount = totalCount;
+        this.max = max;
+    }
+
+    void recordNanos(long nanos) {
+        record(Math.max(nanos, 0) / 1000);
+    }
+
+    void record(long micros) {
+        counts.incrementAndGet(bucketIndex(micros));
+        totalCount.incrementAndGet();
+
+        long currentMax;
+        while ((currentMax = max.get()) < micros && !max.compareAndSet(currentMax, micros)) {
+            // retry
+        }
+    }
+
+    /**
+     * Returns the number of recorded values
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the largest recorded value in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value in microseconds at the percentile for example 99.0
+     */
+    public long getValueAtPercentile(@FloatRange(from = 0, to = 100) double percentile) {
+        long total = getCount();
+        if (total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueInBucket(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    @NonNull
+    LatencyHistogram copy() {
+        AtomicLongArray countsCopy = new AtomicLongArray(BUCKETS);
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            countsCopy.set(i, count);
+            total += count;
+        }
+        return new LatencyHistogram(countsCopy, new AtomicLong(total), new AtomicLong(max.get()));
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) return (int) Math.max(value, 0);
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << (magnitude - SUB_BUCKET_BITS);
+        return lowest + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+}
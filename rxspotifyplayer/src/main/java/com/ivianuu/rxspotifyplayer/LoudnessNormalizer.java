@@ -0,0 +1,119 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Moves the rms level of the audio towards a target level
+ * The level is measured over a sliding window of a few seconds and the gain follows it slowly
+ */
+public final class LoudnessNormalizer implements AudioProcessor {
+
+    private static final double FULL_SCALE_SQUARED = 32768.0 * 32768.0;
+    private static final double WINDOW_SECONDS = 3.0;
+    private static final double SMOOTHING_SECONDS = 0.5;
+    // quiet passages keep the current gain instead of being boosted
+    private static final double GATE_MEAN_SQUARE = Math.pow(10, -60 / 10.0);
+
+    private volatile float targetLevel;
+    private volatile float maxGain;
+
+    // only touched by the audio thread
+    private int sampleRate;
+    private int channels;
+    private double meanSquare;
+    private boolean measured;
+    private float gain = 1f;
+
+    private LoudnessNormalizer(float targetDb, float maxGainDb) {
+        setTarget(targetDb);
+        setMaxGain(maxGainDb);
+    }
+
+    /**
+     * Returns a new normalizer with a target of -18 dbfs rms and at most 12 db of gain change
+     */
+    @NonNull
+    public static LoudnessNormalizer create() {
+        return create(-18f, 12f);
+    }
+
+    /**
+     * Returns a new normalizer
+     */
+    @NonNull
+    public static LoudnessNormalizer create(float targetDb, float maxGainDb) {
+        return new LoudnessNormalizer(targetDb, maxGainDb);
+    }
+
+    /**
+     * Sets the rms level in dbfs the audio is moved to
+     */
+    public void setTarget(float targetDb) {
+        if (targetDb > 0f) {
+            throw new IllegalArgumentException("targetDb must not be above 0");
+        }
+        targetLevel = (float) Math.pow(10, targetDb / 20.0);
+    }
+
+    /**
+     * Sets how many db the gain may boost or cut
+     */
+    public void setMaxGain(float maxGainDb) {
+        if (maxGainDb < 0f) {
+            throw new IllegalArgumentException("maxGainDb must not be negative");
+        }
+        maxGain = (float) Math.pow(10, maxGainDb / 20.0);
+    }
+
+    @Override
+    public void configure(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+    }
+
+    @Override
+    public void process(@NonNull short[] samples, int count) {
+        if (count == 0) return;
+
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            int sample = samples[i];
+            sum += sample * sample;
+        }
+        double blockMeanSquare = sum / (count * FULL_SCALE_SQUARED);
+
+        double frames = (double) count / channels;
+        if (!measured) {
+            if (blockMeanSquare < GATE_MEAN_SQUARE) return;
+            // start from the first audible block instead of silence
+            meanSquare = blockMeanSquare;
+            measured = true;
+        } else {
+            double decay = Math.exp(-frames / (WINDOW_SECONDS * sampleRate));
+            meanSquare = meanSquare * decay + blockMeanSquare * (1 - decay);
+        }
+
+        float desired = gain;
+        if (meanSquare >= GATE_MEAN_SQUARE) {
+            float maxGain = this.maxGain;
+            desired = (float) (targetLevel / Math.sqrt(meanSquare));
+            desired = Math.max(1f / maxGain, Math.min(desired, maxGain));
+        }
+        float smoothing = (float) (1 - Math.exp(-frames / (SMOOTHING_SECONDS * sampleRate)));
+        float newGain = gain + (desired - gain) * smoothing;
+
+        // ramp over the block to avoid steps
+        float start = gain;
+        float step = (newGain - start) / count;
+        for (int i = 0; i < count; i++) {
+            float sample = samples[i] * (start + step * i);
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(sample, Short.MAX_VALUE));
+        }
+        gain = newGain;
+    }
+
+    @Override
+    public void reset() {
+        // the measured level is kept since a flush usually is a seek within the same audio
+    }
+}
@@ -0,0 +1,102 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.spotify.sdk.android.player.Error;
+import com.spotify.sdk.android.player.PlayerEvent;
+
+/**
+ * Forwards metrics to the user sink and the internal recorder if they are enabled
+ */
+final class MetricsDispatcher implements MetricsSink {
+
+    @Nullable
+    private volatile MetricsSink sink;
+    @Nullable
+    private volatile PlayerMetrics recorder;
+
+    void setSink(@Nullable MetricsSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Returns the recorder and starts recording if needed
+     */
+    @NonNull
+    synchronized PlayerMetrics getRecorder() {
+        PlayerMetrics recorder = this.recorder;
+        if (recorder == null) {
+            recorder = new PlayerMetrics();
+            this.recorder = recorder;
+        }
+        return recorder;
+    }
+
+    /**
+     * Returns whether anyone is listening
+     */
+    boolean isEnabled() {
+        return sink != null || recorder != null;
+    }
+
+    @Override
+    public void onOperation(@NonNull String operation, long latencyNanos, @Nullable Error error) {
+        MetricsSink sink = this.sink;
+        if (sink != null) {
+            sink.onOperation(operation, latencyNanos, error);
+        }
+        PlayerMetrics recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onOperation(operation, latencyNanos, error);
+        }
+    }
+
+    @Override
+    public void onPlaybackEvent(@NonNull PlayerEvent event) {
+        MetricsSink sink = this.sink;
+        if (sink != null) {
+            sink.onPlaybackEvent(event);
+        }
+        PlayerMetrics recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onPlaybackEvent(event);
+        }
+    }
+
+    @Override
+    public void onPlaybackError(@NonNull Error error) {
+        MetricsSink sink = this.sink;
+        if (sink != null) {
+            sink.onPlaybackError(error);
+        }
+        PlayerMetrics recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onPlaybackError(error);
+        }
+    }
+
+    @Override
+    public void onUnderrun(int count) {
+        MetricsSink sink = this.sink;
+        if (sink != null) {
+            sink.onUnderrun(count);
+        }
+        PlayerMetrics recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onUnderrun(count);
+        }
+    }
+
+    @Override
+    public void onSamplesWritten(int count) {
+        MetricsSink sink = this.sink;
+        if (sink != null) {
+            sink.onSamplesWritten(count);
+        }
+        PlayerMetrics recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onSamplesWritten(count);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.spotify.sdk.android.player.Error;
+import com.spotify.sdk.android.player.PlayerEvent;
+
+/**
+ * Receives the metrics of a {@link RxSpotifyPlayer}
+ *
+ * The audio callbacks are invoked on the audio thread and must return quickly.
+ */
+public interface MetricsSink {
+
+    /**
+     * Called when a player operation has finished, the error is null on success
+     */
+    void onOperation(@NonNull String operation, long latencyNanos, @Nullable Error error);
+
+    /**
+     * Called for every playback event
+     */
+    void onPlaybackEvent(@NonNull PlayerEvent event);
+
+    /**
+     * Called for every playback error
+     */
+    void onPlaybackError(@NonNull Error error);
+
+    /**
+     * Called when the audio output has run out of samples
+     */
+    void onUnderrun(int count);
+
+    /**
+     * Called when samples have been written to the audio output
+     */
+    void onSamplesWritten(int count);
+}
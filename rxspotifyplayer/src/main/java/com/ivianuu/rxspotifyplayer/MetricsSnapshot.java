@@ -0,0 +1,135 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+import com.spotify.sdk.android.player.Error;
+import com.spotify.sdk.android.player.PlayerEvent;
+
+import java.util.Map;
+
+/**
+ * Point in time copy of the recorded player metrics
+ */
+public final class MetricsSnapshot {
+
+    private final long timestamp;
+    private final long uptime;
+    private final Map<String, OperationMetrics> operations;
+    private final Map<Error, Long> errors;
+    private final Map<PlayerEvent, Long> events;
+    private final long underruns;
+    private final long samplesWritten;
+
+    MetricsSnapshot(long timestamp, long uptime,
+                    @NonNull Map<String, OperationMetrics> operations,
+                    @NonNull Map<Error, Long> errors,
+                    @NonNull Map<PlayerEvent, Long> events,
+                    long underruns, long samplesWritten) {
+        this.timestamp = timestamp;
+        this.uptime = uptime;
+        this.operations = operations;
+        this.errors = errors;
+        this.events = events;
+        this.underruns = underruns;
+        this.samplesWritten = samplesWritten;
+    }
+
+    /**
+     * Returns the time at which the snapshot was taken
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the time in ms since the recording started
+     */
+    public long getUptime() {
+        return uptime;
+    }
+
+    /**
+     * Returns the metrics per operation name
+     */
+    @NonNull
+    public Map<String, OperationMetrics> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Returns the number of operation and playback errors per error code
+     */
+    @NonNull
+    public Map<Error, Long> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the number of playback events per event
+     */
+    @NonNull
+    public Map<PlayerEvent, Long> getEvents() {
+        return events;
+    }
+
+    /**
+     * Returns the number of playback events per second since the recording started
+     */
+    public double getEventRate(@NonNull PlayerEvent event) {
+        Long count = events.get(event);
+        if (count == null || uptime <= 0) return 0;
+        return count * 1000d / uptime;
+    }
+
+    /**
+     * Returns the number of audio output underruns
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Returns the number of samples written to the audio output
+     */
+    public long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    /**
+     * Metrics of a single operation
+     */
+    public static final class OperationMetrics {
+
+        private final long successCount;
+        private final long errorCount;
+        private final LatencyHistogram latencies;
+
+        OperationMetrics(long successCount, long errorCount, @NonNull LatencyHistogram latencies) {
+            this.successCount = successCount;
+            this.errorCount = errorCount;
+            this.latencies = latencies;
+        }
+
+        /**
+         * Returns the number of successful calls
+         */
+        public long getSuccessCount() {
+            return successCount;
+        }
+
+        /**
+         * Returns the number of failed calls
+         */
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * Returns the latencies of all calls
+         */
+        @NonNull
+        public LatencyHistogram getLatencies() {
+            return latencies;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input of one audio controller into an {@link AudioMixer}
+ * The controller pump writes the samples, the mixer thread consumes them
+ */
+final class MixerSession {
+
+    private static final int BUFFER_CAPACITY = 1 << 15;
+
+    private final AudioMixer mixer;
+    private final Runnable onSpaceAvailable;
+    final SampleRingBuffer buffer = new SampleRingBuffer(BUFFER_CAPACITY);
+    private final AtomicLong consumedFrames = new AtomicLong();
+    private volatile boolean playing;
+
+    MixerSession(@NonNull AudioMixer mixer, @NonNull Runnable onSpaceAvailable) {
+        this.mixer = mixer;
+        this.onSpaceAvailable = onSpaceAvailable;
+    }
+
+    /**
+     * Queues the samples without blocking and returns how many fit
+     */
+    int write(@NonNull short[] samples, int offset, int count) {
+        return buffer.write(samples, offset, count);
+    }
+
+    void play() {
+        playing = true;
+        mixer.signal();
+    }
+
+    void pause() {
+        playing = false;
+    }
+
+    boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Drops the samples queued so far before the mixer reads the next block
+     */
+    void flush() {
+        buffer.clear();
+    }
+
+    /**
+     * Returns the frames which have left the mixer since the session was opened
+     */
+    long getPlayedFrames() {
+        return Math.max(consumedFrames.get() - mixer.getLatencyFrames(), 0);
+    }
+
+    void close() {
+        playing = false;
+        mixer.closeSession(this);
+    }
+
+    // called by the mixer thread
+
+    /**
+     * Drops the samples which were queued before the last flush
+     */
+    void dropFlushedSamples() {
+        buffer.dropCleared();
+    }
+
+    void onConsumed(int frames) {
+        consumedFrames.addAndGet(frames);
+        onSpaceAvailable.run();
+    }
+}
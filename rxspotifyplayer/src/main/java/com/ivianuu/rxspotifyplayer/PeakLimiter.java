@@ -0,0 +1,167 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Lookahead peak limiter which keeps the output below a threshold without clipping
+ * The audio is delayed by the lookahead so the gain is already down when a peak arrives
+ */
+public final class PeakLimiter implements AudioProcessor {
+
+    private final long lookaheadMicros;
+    private volatile float threshold;
+    private volatile float releaseMs;
+
+    // only touched by the audio thread
+    private int channels;
+    private int lookahead;
+    private short[] delay = new short[0];
+    private int delayPosition;
+    // sliding minimum of the gains needed over the lookahead window
+    private long[] minFrames = new long[0];
+    private float[] minGains = new float[0];
+    private int minHead;
+    private int minCount;
+    // moving average of the sliding minimum which turns the gain steps into ramps
+    private float[] averageWindow = new float[0];
+    private double averageSum;
+    private long frame;
+    private float gain = 1f;
+    private float releaseCoefficient;
+    private int sampleRate;
+    private float appliedReleaseMs = -1f;
+
+    private PeakLimiter(float thresholdDb, long lookaheadMicros, float releaseMs) {
+        this.lookaheadMicros = lookaheadMicros;
+        setThreshold(thresholdDb);
+        setRelease(releaseMs);
+    }
+
+    /**
+     * Returns a new limiter with a threshold of -1 dbfs, 5 ms lookahead and 50 ms release
+     */
+    @NonNull
+    public static PeakLimiter create() {
+        return create(-1f, 5000, 50f);
+    }
+
+    /**
+     * Returns a new limiter
+     */
+    @NonNull
+    public static PeakLimiter create(float thresholdDb, long lookaheadMicros, float releaseMs) {
+        if (lookaheadMicros <= 0) {
+            throw new IllegalArgumentException("lookaheadMicros must be positive");
+        }
+        return new PeakLimiter(thresholdDb, lookaheadMicros, releaseMs);
+    }
+
+    /**
+     * Sets the maximum output level in dbfs
+     */
+    public void setThreshold(float thresholdDb) {
+        if (thresholdDb > 0f) {
+            throw new IllegalArgumentException("thresholdDb must not be above 0");
+        }
+        threshold = (float) (Short.MAX_VALUE * Math.pow(10, thresholdDb / 20.0));
+    }
+
+    /**
+     * Sets how fast the gain recovers after a peak
+     */
+    public void setRelease(float releaseMs) {
+        if (releaseMs <= 0f) {
+            throw new IllegalArgumentException("releaseMs must be positive");
+        }
+        this.releaseMs = releaseMs;
+    }
+
+    @Override
+    public void configure(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        lookahead = (int) Math.max(lookaheadMicros * sampleRate / 1000000L, 1);
+        delay = new short[lookahead * channels];
+        minFrames = new long[lookahead + 1];
+        minGains = new float[lookahead + 1];
+        averageWindow = new float[lookahead];
+        appliedReleaseMs = -1f;
+        reset();
+    }
+
+    @Override
+    public void process(@NonNull short[] samples, int count) {
+        float releaseMs = this.releaseMs;
+        if (releaseMs != appliedReleaseMs) {
+            appliedReleaseMs = releaseMs;
+            releaseCoefficient = (float) (1 - Math.exp(-1000.0 / (releaseMs * sampleRate)));
+        }
+
+        float threshold = this.threshold;
+        int channels = this.channels;
+        int lookahead = this.lookahead;
+        int window = minFrames.length;
+
+        for (int i = 0; i + channels <= count; i += channels) {
+            // gain this frame needs
+            int peak = 0;
+            for (int c = 0; c < channels; c++) {
+                peak = Math.max(peak, Math.abs(samples[i + c]));
+            }
+            float needed = peak > threshold ? threshold / peak : 1f;
+
+            // sliding minimum over the last window frames
+            if (minCount > 0 && minFrames[minHead] <= frame - window) {
+                minHead = (minHead + 1) % window;
+                minCount--;
+            }
+            while (minCount > 0 && minGains[(minHead + minCount - 1) % window] >= needed) {
+                minCount--;
+            }
+            int slot = (minHead + minCount) % window;
+            minFrames[slot] = frame;
+            minGains[slot] = needed;
+            minCount++;
+            float minimum = minGains[minHead];
+
+            // average the minimum over the lookahead so the gain reaches it right when the peak leaves the delay
+            int averageIndex = (int) (frame % lookahead);
+            averageSum += minimum - averageWindow[averageIndex];
+            averageWindow[averageIndex] = minimum;
+            float target = (float) (averageSum / lookahead);
+
+            if (target < gain) {
+                gain = target;
+            } else {
+                gain += (target - gain) * releaseCoefficient;
+            }
+
+            // swap the frame with the delayed one and apply the gain to it
+            for (int c = 0; c < channels; c++) {
+                int d = delayPosition + c;
+                short delayed = delay[d];
+                delay[d] = samples[i + c];
+                samples[i + c] = (short) (delayed * gain);
+            }
+            delayPosition += channels;
+            if (delayPosition == delay.length) {
+                delayPosition = 0;
+            }
+            frame++;
+        }
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(delay, (short) 0);
+        Arrays.fill(averageWindow, 1f);
+        averageSum = lookahead;
+        delayPosition = 0;
+        minHead = 0;
+        minCount = 0;
+        frame = 0;
+        gain = 1f;
+    }
+}
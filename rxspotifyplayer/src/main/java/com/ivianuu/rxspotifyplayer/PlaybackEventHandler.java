@@ -0,0 +1,90 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+import com.spotify.sdk.android.player.PlayerEvent;
+
+/**
+ * Turns the playback events of the sdk into state changes
+ * The native state is read at most once per event and everything is derived from that read
+ */
+final class PlaybackEventHandler {
+
+    /**
+     * Receives the state changes on the sdk thread, the snapshot is only valid during the call
+     */
+    interface Listener {
+        void onAudioDeliveryDone();
+
+        void onCompletion();
+
+        void onPlayingChanged(boolean playing);
+
+        void onTrackChanged(@NonNull String uri);
+
+        void onPlaybackState(@NonNull PlayerSnapshot snapshot);
+    }
+
+    private final PlayerSnapshot.Source source;
+    private final Listener listener;
+    private final PlayerSnapshot snapshot = new PlayerSnapshot();
+    private boolean pendingChange;
+
+    PlaybackEventHandler(@NonNull PlayerSnapshot.Source source, @NonNull Listener listener) {
+        this.source = source;
+        this.listener = listener;
+    }
+
+    void onPlaybackEvent(@NonNull PlayerEvent playerEvent) {
+        switch (playerEvent) {
+            case kSpPlaybackNotifyAudioDeliveryDone:
+            case kSpPlaybackNotifyPlay:
+            case kSpPlaybackNotifyPause:
+            case kSpPlaybackNotifyTrackChanged:
+                handlePlaybackEvent(playerEvent, snapshot.read(source));
+                break;
+            case kSpPlaybackNotifyMetadataChanged:
+                // now we can create a valid playback state
+                if (pendingChange) {
+                    pendingChange = false;
+                    onStateChanged();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reads and publishes the playback state after a command changed it
+     */
+    void onStateChanged() {
+        listener.onPlaybackState(snapshot.read(source));
+    }
+
+    private void handlePlaybackEvent(@NonNull PlayerEvent playerEvent, @NonNull PlayerSnapshot snapshot) {
+        switch (playerEvent) {
+            case kSpPlaybackNotifyAudioDeliveryDone:
+                // play out what is left in the buffer
+                listener.onAudioDeliveryDone();
+                if (!snapshot.isPlaying() && snapshot.hasTrack) {
+                    // track has completed
+                    listener.onCompletion();
+                }
+                break;
+            case kSpPlaybackNotifyPlay:
+            case kSpPlaybackNotifyPause:
+                listener.onPlayingChanged(playerEvent == PlayerEvent.kSpPlaybackNotifyPlay);
+
+                // update playback state here only if we have meta data
+                if (snapshot.hasTrack) {
+                    listener.onPlaybackState(snapshot);
+                } else {
+                    // otherwise set pending change
+                    pendingChange = true;
+                }
+                break;
+            case kSpPlaybackNotifyTrackChanged:
+                listener.onTrackChanged(snapshot.uri);
+                break;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.spotify.sdk.android.player.PlaybackBitrate;
+
+/**
+ * Everything which is needed to pick up the playback after the process has been killed
+ */
+final class PlaybackSession {
+
+    final boolean playing;
+    final int position;
+    final int duration;
+    @NonNull final String uri;
+    final float volume;
+    @Nullable final PlaybackBitrate bitrate;
+    @NonNull final Queue queue;
+
+    PlaybackSession(boolean playing, int position, int duration, @NonNull String uri, float volume,
+                    @Nullable PlaybackBitrate bitrate, @NonNull Queue queue) {
+        this.playing = playing;
+        this.position = position;
+        this.duration = duration;
+        this.uri = uri;
+        this.volume = volume;
+        this.bitrate = bitrate;
+        this.queue = queue;
+    }
+}
@@ -0,0 +1,92 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.spotify.sdk.android.player.Metadata;
+
+/**
+ * Allocation free playback state packed into a single long
+ *
+ * Layout: bit 63 playing, bits 31..61 progress + 1, bits 0..30 duration + 1.
+ * Unknown progress or duration values are stored as -1 like in {@link PlaybackState}.
+ */
+public final class PlaybackSnapshot {
+
+    /**
+     * Snapshot of a not playing player without a track
+     */
+    public static final long EMPTY = pack(false, -1, -1);
+
+    private static final int VALUE_BITS = 31;
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+    private static final long PLAYING_BIT = 1L << 63;
+
+    private PlaybackSnapshot() {
+        // no instances
+    }
+
+    /**
+     * Packs the values into a snapshot
+     */
+    public static long pack(boolean playing, int progress, int duration) {
+        return (playing ? PLAYING_BIT : 0L)
+                | (encode(progress) << VALUE_BITS)
+                | encode(duration);
+    }
+
+    /**
+     * Returns the playing state of the snapshot
+     */
+    public static boolean isPlaying(long snapshot) {
+        return (snapshot & PLAYING_BIT) != 0;
+    }
+
+    /**
+     * Returns the progress of the snapshot
+     */
+    public static int getProgress(long snapshot) {
+        return decode(snapshot >>> VALUE_BITS);
+    }
+
+    /**
+     * Returns the duration of the snapshot
+     */
+    public static int getDuration(long snapshot) {
+        return decode(snapshot);
+    }
+
+    static long extract(@Nullable com.spotify.sdk.android.player.PlaybackState playbackState,
+                        @Nullable Metadata metadata) {
+        boolean playing = false;
+        int duration = -1;
+        int progress = -1;
+
+        if (playbackState != null) {
+            playing = playbackState.isPlaying;
+            progress = (int) playbackState.positionMs;
+        }
+        if (metadata != null && metadata.currentTrack != null) {
+            duration = (int) metadata.currentTrack.durationMs;
+        }
+
+        return pack(playing, progress, duration);
+    }
+
+    @NonNull
+    static String extractUri(@Nullable Metadata metadata) {
+        if (metadata != null && metadata.currentTrack != null) {
+            return metadata.currentTrack.uri;
+        }
+        return "";
+    }
+
+    private static long encode(int value) {
+        // -1 becomes 0, values which do not fit are clamped
+        return Math.min(Math.max(value + 1L, 0L), VALUE_MASK);
+    }
+
+    private static int decode(long bits) {
+        return (int) (bits & VALUE_MASK) - 1;
+    }
+}
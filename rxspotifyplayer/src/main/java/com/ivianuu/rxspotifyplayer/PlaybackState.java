@@ -26,26 +26,30 @@ public final class PlaybackState {
     }
 
     static PlaybackState extractFromPlayer(@Nullable SpotifyPlayer spotifyPlayer) {
-        boolean playing = false;
-        int duration = -1;
-        int progress = -1;
-        String uri = "";
-        long timestamp = System.currentTimeMillis();
-
+        com.spotify.sdk.android.player.PlaybackState playbackState = null;
+        Metadata metadata = null;
         if (spotifyPlayer != null) {
-            com.spotify.sdk.android.player.PlaybackState playbackState = spotifyPlayer.getPlaybackState();
-            if (playbackState != null) {
-                playing = playbackState.isPlaying;
-                progress = (int) playbackState.positionMs;
-            }
-            Metadata metadata = spotifyPlayer.getMetadata();
-            if (metadata != null && metadata.currentTrack != null) {
-                duration = (int) metadata.currentTrack.durationMs;
-                uri = metadata.currentTrack.uri;
-            }
+            playbackState = spotifyPlayer.getPlaybackState();
+            metadata = spotifyPlayer.getMetadata();
         }
+        return fromSnapshot(PlaybackSnapshot.extract(playbackState, metadata),
+                PlaybackSnapshot.extractUri(metadata), System.currentTimeMillis());
+    }
+
+    static PlaybackState fromSnapshot(long snapshot, @NonNull String uri, long timestamp) {
+        return new PlaybackState(PlaybackSnapshot.isPlaying(snapshot),
+                PlaybackSnapshot.getDuration(snapshot), PlaybackSnapshot.getProgress(snapshot), uri, timestamp);
+    }
 
-        return new PlaybackState(playing, duration, progress, uri, timestamp);
+    /**
+     * Returns whether this state has been created from the snapshot
+     */
+    boolean matches(long snapshot, @NonNull String uri, long timestamp) {
+        return this.timestamp == timestamp
+                && playing == PlaybackSnapshot.isPlaying(snapshot)
+                && duration == PlaybackSnapshot.getDuration(snapshot)
+                && progress == PlaybackSnapshot.getProgress(snapshot)
+                && this.uri.equals(uri);
     }
 
     /**
@@ -95,4 +99,30 @@ public final class PlaybackState {
     public long getTimestamp() {
         return timestamp;
     }
+
+    /**
+     * Two states are equal if they describe the same playback regardless of their timestamp
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PlaybackState that = (PlaybackState) o;
+
+        return playing == that.playing
+                && duration == that.duration
+                && progress == that.progress
+                && uri.equals(that.uri);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (playing ? 1 : 0);
+        result = 31 * result + duration;
+        result = 31 * result + progress;
+        result = 31 * result + uri.hashCode();
+        return result;
+    }
 }
+
@@ -0,0 +1,104 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.ivianuu.rxspotifyplayer.Preconditions.checkNotNull;
+
+/**
+ * Process wide, reference counted owner of a player
+ * The player is bound to the application context and survives configuration changes and screen transitions,
+ * it is released once the last holder is gone for the grace period
+ */
+public final class PlayerHost {
+
+    private static final long DEFAULT_GRACE_PERIOD_MS = 10000;
+
+    private static final Map<String, PlayerHost> HOSTS = new HashMap<>();
+
+    private final RxSpotifyPlayer player;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable teardown = this::teardown;
+
+    private int refCount;
+    private long gracePeriodMs = DEFAULT_GRACE_PERIOD_MS;
+
+    private PlayerHost(Context context, String clientId) {
+        player = RxSpotifyPlayer.create(context, clientId);
+    }
+
+    /**
+     * Returns the host of the client id for this process
+     */
+    @NonNull
+    public static PlayerHost get(@NonNull Context context, @NonNull String clientId) {
+        checkNotNull(context, "context == null");
+        checkNotNull(clientId, "clientId == null");
+        synchronized (HOSTS) {
+            PlayerHost host = HOSTS.get(clientId);
+            if (host == null) {
+                // never hold on to an activity
+                host = new PlayerHost(context.getApplicationContext(), clientId);
+                HOSTS.put(clientId, host);
+            }
+            return host;
+        }
+    }
+
+    /**
+     * Returns the player and keeps it alive until the matching call to release
+     * A player which is still logged in completes init immediately
+     */
+    @NonNull
+    public synchronized RxSpotifyPlayer acquire() {
+        refCount++;
+        handler.removeCallbacks(teardown);
+        return player;
+    }
+
+    /**
+     * Gives up a reference, the player is released after the grace period if it was the last one
+     */
+    public synchronized void release() {
+        if (refCount == 0) {
+            throw new IllegalStateException("release() without acquire()");
+        }
+        refCount--;
+        if (refCount == 0) {
+            handler.postDelayed(teardown, gracePeriodMs);
+        }
+    }
+
+    /**
+     * Sets how long the player stays alive after the last holder has released it
+     */
+    public synchronized void setGracePeriod(@IntRange(from = 0) long gracePeriod, @NonNull TimeUnit unit) {
+        checkNotNull(unit, "unit == null");
+        if (gracePeriod < 0) {
+            throw new IllegalArgumentException("gracePeriod must not be negative");
+        }
+        gracePeriodMs = unit.toMillis(gracePeriod);
+    }
+
+    /**
+     * Returns the number of holders
+     */
+    public synchronized int getRefCount() {
+        return refCount;
+    }
+
+    private void teardown() {
+        synchronized (this) {
+            // acquired again while the teardown was posted
+            if (refCount > 0) return;
+        }
+        player.release();
+    }
+}
@@ -0,0 +1,111 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.spotify.sdk.android.player.Error;
+import com.spotify.sdk.android.player.PlayerEvent;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records metrics in memory and creates {@link MetricsSnapshot}s
+ */
+final class PlayerMetrics implements MetricsSink {
+
+    private static final Error[] ERRORS = Error.values();
+    private static final PlayerEvent[] EVENTS = PlayerEvent.values();
+
+    private final long startTime = SystemClock.elapsedRealtime();
+    private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private final AtomicLongArray errors = new AtomicLongArray(ERRORS.length);
+    private final AtomicLongArray events = new AtomicLongArray(EVENTS.length);
+    private final AtomicLong underruns = new AtomicLong();
+    private final AtomicLong samplesWritten = new AtomicLong();
+
+    @Override
+    public void onOperation(@NonNull String operation, long latencyNanos, @Nullable Error error) {
+        Operation metrics = operations.get(operation);
+        if (metrics == null) {
+            Operation newMetrics = new Operation();
+            metrics = operations.putIfAbsent(operation, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+
+        metrics.latencies.recordNanos(latencyNanos);
+        if (error == null) {
+            metrics.successCount.incrementAndGet();
+        } else {
+            metrics.errorCount.incrementAndGet();
+            errors.incrementAndGet(error.ordinal());
+        }
+    }
+
+    @Override
+    public void onPlaybackEvent(@NonNull PlayerEvent event) {
+        events.incrementAndGet(event.ordinal());
+    }
+
+    @Override
+    public void onPlaybackError(@NonNull Error error) {
+        errors.incrementAndGet(error.ordinal());
+    }
+
+    @Override
+    public void onUnderrun(int count) {
+        underruns.addAndGet(count);
+    }
+
+    @Override
+    public void onSamplesWritten(int count) {
+        samplesWritten.addAndGet(count);
+    }
+
+    @NonNull
+    MetricsSnapshot snapshot() {
+        Map<String, MetricsSnapshot.OperationMetrics> operations = new HashMap<>();
+        for (Map.Entry<String, Operation> entry : this.operations.entrySet()) {
+            Operation operation = entry.getValue();
+            operations.put(entry.getKey(), new MetricsSnapshot.OperationMetrics(
+                    operation.successCount.get(), operation.errorCount.get(), operation.latencies.copy()));
+        }
+
+        Map<Error, Long> errors = new EnumMap<>(Error.class);
+        for (int i = 0; i < ERRORS.length; i++) {
+            long count = this.errors.get(i);
+            if (count > 0) {
+                errors.put(ERRORS[i], count);
+            }
+        }
+
+        Map<PlayerEvent, Long> events = new EnumMap<>(PlayerEvent.class);
+        for (int i = 0; i < EVENTS.length; i++) {
+            long count = this.events.get(i);
+            if (count > 0) {
+                events.put(EVENTS[i], count);
+            }
+        }
+
+        return new MetricsSnapshot(System.currentTimeMillis(),
+                SystemClock.elapsedRealtime() - startTime,
+                Collections.unmodifiableMap(operations),
+                Collections.unmodifiableMap(errors),
+                Collections.unmodifiableMap(events),
+                underruns.get(), samplesWritten.get());
+    }
+
+    private static final class Operation {
+        private final AtomicLong successCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final LatencyHistogram latencies = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,61 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.spotify.sdk.android.player.Metadata;
+import com.spotify.sdk.android.player.PlaybackState;
+
+/**
+ * Coherent copy of the native playback state and metadata
+ * Taken once per player event so every decision for the event sees the same values,
+ * the instance is reused for the next event so it must not be kept
+ */
+final class PlayerSnapshot {
+
+    /**
+     * Native state of the player
+     */
+    interface Source {
+        @Nullable
+        PlaybackState getPlaybackState();
+
+        @Nullable
+        Metadata getMetadata();
+    }
+
+    long state = PlaybackSnapshot.EMPTY;
+    @NonNull String uri = "";
+    boolean hasTrack;
+    long timestamp;
+
+    /**
+     * Sets known values
+     */
+    @NonNull
+    PlayerSnapshot set(long state, @NonNull String uri, long timestamp) {
+        this.state = state;
+        this.uri = uri;
+        this.hasTrack = !uri.isEmpty();
+        this.timestamp = timestamp;
+        return this;
+    }
+
+    /**
+     * Reads the playback state and the metadata of the source once without allocating
+     */
+    @NonNull
+    PlayerSnapshot read(@NonNull Source source) {
+        timestamp = System.currentTimeMillis();
+        PlaybackState playbackState = source.getPlaybackState();
+        Metadata metadata = source.getMetadata();
+        state = PlaybackSnapshot.extract(playbackState, metadata);
+        uri = PlaybackSnapshot.extractUri(metadata);
+        hasTrack = metadata != null && metadata.currentTrack != null;
+        return this;
+    }
+
+    boolean isPlaying() {
+        return PlaybackSnapshot.isPlaying(state);
+    }
+}
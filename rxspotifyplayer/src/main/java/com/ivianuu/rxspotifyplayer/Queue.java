@@ -0,0 +1,110 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Play queue
+ */
+public final class Queue {
+
+    static final Queue EMPTY = new Queue(Collections.emptyList(), -1);
+
+    private final List<String> uris;
+    private final int index;
+
+    private Queue(List<String> uris, int index) {
+        this.uris = uris;
+        this.index = index;
+    }
+
+    static Queue of(@NonNull String uri) {
+        return new Queue(Collections.singletonList(uri), 0);
+    }
+
+    static Queue of(@NonNull List<String> uris, int index) {
+        if (uris.isEmpty()) return EMPTY;
+        return new Queue(Collections.unmodifiableList(new ArrayList<>(uris)),
+                Math.min(Math.max(index, 0), uris.size() - 1));
+    }
+
+    /**
+     * Returns the uris of the queue
+     */
+    @NonNull
+    public List<String> getUris() {
+        return uris;
+    }
+
+    /**
+     * Returns the index of the current track or -1
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the uri of the current track
+     */
+    @Nullable
+    public String getCurrent() {
+        return index >= 0 && index < uris.size() ? uris.get(index) : null;
+    }
+
+    /**
+     * Returns whether there is a track after the current one
+     */
+    public boolean hasNext() {
+        return index + 1 < uris.size();
+    }
+
+    /**
+     * Returns whether there is a track before the current one
+     */
+    public boolean hasPrevious() {
+        return index > 0;
+    }
+
+    /**
+     * Returns the size of the queue
+     */
+    public int size() {
+        return uris.size();
+    }
+
+    /**
+     * Returns the queue with the uri appended, the current track stays the same
+     * Without a current track the uri only becomes current once the sdk plays it
+     */
+    Queue append(@NonNull String uri) {
+        List<String> newUris = new ArrayList<>(uris.size() + 1);
+        newUris.addAll(uris);
+        newUris.add(uri);
+        return new Queue(Collections.unmodifiableList(newUris), index);
+    }
+
+    Queue moveTo(int index) {
+        if (index == this.index || index < 0 || index >= uris.size()) return this;
+        return new Queue(uris, index);
+    }
+
+    /**
+     * Returns the queue moved to the uri, the tracks next to the current one are preferred
+     * otherwise the first occurrence at or after the current index is used
+     */
+    Queue moveTo(@NonNull String uri) {
+        if (uri.equals(getCurrent())) return this;
+        if (hasNext() && uri.equals(uris.get(index + 1))) return moveTo(index + 1);
+        if (hasPrevious() && uri.equals(uris.get(index - 1))) return moveTo(index - 1);
+        for (int i = Math.max(index, 0); i < uris.size(); i++) {
+            if (uri.equals(uris.get(i))) {
+                return moveTo(i);
+            }
+        }
+        return this;
+    }
+}
@@ -6,20 +6,33 @@ import android.support.annotation.CheckResult;
 import android.support.annotation.FloatRange;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import com.spotify.sdk.android.player.Config;
 import com.spotify.sdk.android.player.ConnectionStateCallback;
 import com.spotify.sdk.android.player.Connectivity;
 import com.spotify.sdk.android.player.Error;
+import com.spotify.sdk.android.player.Metadata;
 import com.spotify.sdk.android.player.PlaybackBitrate;
 import com.spotify.sdk.android.player.Player;
 import com.spotify.sdk.android.player.PlayerEvent;
 import com.spotify.sdk.android.player.Spotify;
 import com.spotify.sdk.android.player.SpotifyPlayer;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.BackpressureStrategy;
 import io.reactivex.Completable;
 import io.reactivex.CompletableEmitter;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.subjects.BehaviorSubject;
 import io.reactivex.subjects.PublishSubject;
 
@@ -30,6 +43,7 @@ import static com.ivianuu.rxspotifyplayer.Preconditions.checkNotNull;
  */
 public final class RxSpotifyPlayer {
 
+    private static final String SPOTIFY_URI_PREFIX = "spotify:";
     private static final String URI_PREFIX = "spotify:track:";
 
     private final Context context;
@@ -38,17 +52,55 @@ public final class RxSpotifyPlayer {
     private PublishSubject<Object> completionSubject = PublishSubject.create();
     private PublishSubject<Error> errorsSubject = PublishSubject.create();
     private BehaviorSubject<PlaybackState> playbackStateSubject = BehaviorSubject.createDefault(PlaybackState.extractFromPlayer(null));
+    private BehaviorSubject<Queue> queueSubject = BehaviorSubject.createDefault(Queue.EMPTY);
+    private PublishSubject<BufferSizeDecision> bufferSizeDecisionsSubject = PublishSubject.create();
+    private BehaviorSubject<Boolean> bufferingSubject = BehaviorSubject.createDefault(false);
+    private PublishSubject<IdleTransition> idleTransitionsSubject = PublishSubject.create();
+    private BehaviorSubject<Boolean> idleSubject = BehaviorSubject.createDefault(false);
+    private PublishSubject<Integer> underrunsSubject = PublishSubject.create();
 
     private SpotifyPlayer player;
     private VolumeAudioController audioController;
-
-    private PlaybackState playbackState;
-
-    private RxSpotifyPlayer(Context context, String clientId) {
+    private final MetricsDispatcher metrics = new MetricsDispatcher();
+    private final CommandExecutor commandExecutor = new CommandExecutor(metrics);
+    private AudioClock audioClock;
+
+    // last created state object, never null and replaced as a whole
+    private volatile PlaybackState playbackState;
+
+    private volatile long idleTimeoutMs;
+    @Nullable
+    private Disposable idleTimer;
+    @Nullable
+    private Completable pendingInit;
+
+    // allocation free copy of the last playback state guarded by a sequence lock
+    private volatile int snapshotSequence;
+    private volatile long snapshot = PlaybackSnapshot.EMPTY;
+    private volatile long snapshotTimestamp = System.currentTimeMillis();
+    private volatile String snapshotUri = "";
+    private final AtomicLong nativeReads = new AtomicLong();
+    private final AtomicInteger underrunSubscribers = new AtomicInteger();
+
+    @Nullable
+    private volatile SessionStore sessionStore;
+    @Nullable
+    private volatile PlaybackBitrate playbackBitrate;
+
+    @VisibleForTesting
+    RxSpotifyPlayer(Context context, String clientId) {
         this.context = context;
         this.clientId = clientId;
 
-        audioController = new VolumeAudioController();
+        audioController = new VolumeAudioController(metrics);
+        audioController.setBufferSizeListener(bufferSizeDecisionsSubject::onNext);
+        audioController.setBufferingListener(bufferingSubject::onNext);
+        audioController.setIdleListener(transition -> {
+            idleSubject.onNext(transition.getType() == IdleTransition.Type.IDLE);
+            idleTransitionsSubject.onNext(transition);
+        });
+        audioClock = new AudioClock(audioController);
+        playbackState = PlaybackState.fromSnapshot(snapshot, snapshotUri, snapshotTimestamp);
     }
 
     /**
@@ -65,11 +117,28 @@ public final class RxSpotifyPlayer {
 
     /**
      * Initializes the player
+     * Concurrent subscribers share the initialization which is in flight
      */
     @CheckResult @NonNull
     public Completable init(@NonNull final String accessToken) {
         checkNotNull(accessToken, "accessToken == null");
-        return Completable.create(e -> init(e, accessToken));
+        return Completable.defer(() -> sharedInit(accessToken));
+    }
+
+    private synchronized Completable sharedInit(String accessToken) {
+        if (isInitialized()) return Completable.complete();
+
+        if (pendingInit == null) {
+            pendingInit = Completable.create(e -> init(e, accessToken))
+                    .doOnTerminate(this::clearPendingInit)
+                    .cache();
+        }
+        return pendingInit;
+    }
+
+    private synchronized void clearPendingInit() {
+        // failed inits are retried with the next subscription
+        pendingInit = null;
     }
 
     private void init(final CompletableEmitter e, String accessToken) {
@@ -79,6 +148,8 @@ public final class RxSpotifyPlayer {
             return;
         }
 
+        final long startTime = System.nanoTime();
+
         // config
         Config config = new Config(
                 context, accessToken, clientId);
@@ -98,6 +169,10 @@ public final class RxSpotifyPlayer {
                         player.addConnectionStateCallback(new ConnectionStateCallback() {
                             @Override
                             public void onLoggedIn() {
+                                if (metrics.isEnabled()) {
+                                    metrics.onOperation("init", System.nanoTime() - startTime, null);
+                                }
+
                                 // ready to play
                                 if (!e.isDisposed()) {
                                     e.onComplete();
@@ -109,6 +184,10 @@ public final class RxSpotifyPlayer {
 
                             @Override
                             public void onLoginFailed(Error error) {
+                                if (metrics.isEnabled()) {
+                                    metrics.onOperation("init", System.nanoTime() - startTime, error);
+                                }
+
                                 // something goes wrong
                                 if (!e.isDisposed()) {
                                     e.onError(new Throwable(error.name()));
@@ -127,6 +206,10 @@ public final class RxSpotifyPlayer {
 
                     @Override
                     public void onError(Throwable throwable) {
+                        if (metrics.isEnabled()) {
+                            metrics.onOperation("init", System.nanoTime() - startTime, Error.kSpErrorInitFailed);
+                        }
+
                         // error
                         if (!e.isDisposed()) {
                             e.onError(throwable);
@@ -149,6 +232,8 @@ public final class RxSpotifyPlayer {
         }
 
         player = null;
+        commandExecutor.clear(Error.kSpErrorUninitialized);
+        cancelIdle();
     }
 
     // PLAY
@@ -158,98 +243,213 @@ public final class RxSpotifyPlayer {
      */
     @CheckResult @NonNull
     public Completable play(@NonNull String playContext) {
+        return play(playContext, 0, 0);
+    }
+
+    /**
+     * Plays the track at the index of the album or playlist uri or the track id or uri from the position
+     * Starting at the position takes a single round trip unlike a play followed by a seek
+     */
+    @CheckResult @NonNull
+    public Completable play(@NonNull String playContext,
+                            @IntRange(from = 0) final int index,
+                            @IntRange(from = 0) final int positionMs) {
         checkNotNull(playContext, "playContext == null");
-        final String uri;
-        if (!playContext.contains(URI_PREFIX)) {
-            uri = URI_PREFIX + playContext;
-        } else {
-            uri = playContext;
+        if (index < 0) {
+            throw new IllegalArgumentException("index must not be negative");
         }
-        return Completable.create(e -> {
-            if (isInitialized()) {
-                player.playUri(new Player.OperationCallback() {
-                    @Override
-                    public void onSuccess() {
-                        if (!e.isDisposed()) {
-                            e.onComplete();
-                        }
-                    }
+        if (positionMs < 0) {
+            throw new IllegalArgumentException("positionMs must not be negative");
+        }
+        final String uri = toUri(playContext);
+        // playing a uri starts a new queue, the tracks of a context are only known to the sdk
+        return playUri(uri, index, positionMs, () -> publishQueue(isTrackUri(uri) ? Queue.of(uri) : Queue.EMPTY));
+    }
 
-                    @Override
-                    public void onError(Error error) {
-                        if (!e.isDisposed()) {
-                            e.onError(new Throwable(error.name()));
-                        }
-                    }
-                }, uri, 0, 0);
-            } else {
-                if (!e.isDisposed()) {
-                    e.onError(new Throwable(Error.kSpErrorUninitialized.name()));
+    private Completable playUri(@NonNull String uri, int index, int positionMs, @NonNull Runnable onSuccess) {
+        return Completable.defer(() -> {
+            // the flush of the new track may arrive before or after the callback
+            int[] flushCount = new int[1];
+            return operation(CommandExecutor.Type.PLAY, "playUri",
+                    callback -> {
+                        audioController.onPlayRequested();
+                        flushCount[0] = audioController.getFlushCount();
+                        player.playUri(callback, uri, index, positionMs);
+                    }, () -> {
+                        audioClock.anchorFlush(positionMs, flushCount[0] + 1);
+                        onSuccess.run();
+                    });
+        }).doOnError(throwable -> audioController.cancelFirstAudio());
+    }
+
+    // QUEUE
+
+    /**
+     * Adds the spotify id or uri to the end of the queue
+     * The sdk buffers queued tracks ahead of time so the transition is gapless
+     */
+    @CheckResult @NonNull
+    public Completable enqueue(@NonNull String playContext) {
+        checkNotNull(playContext, "playContext == null");
+        final String uri = toUri(playContext);
+        return operation(CommandExecutor.Type.QUEUE, "queue",
+                callback -> player.queue(callback, uri),
+                () -> publishQueue(getQueue().append(uri)));
+    }
+
+    /**
+     * Skips to the next track of the queue
+     */
+    @CheckResult @NonNull
+    public Completable next() {
+        // the queue follows once the sdk reports the track change
+        return operation(CommandExecutor.Type.NEXT, "skipToNext",
+                callback -> player.skipToNext(callback),
+                null);
+    }
+
+    /**
+     * Skips to the previous track of the queue
+     */
+    @CheckResult @NonNull
+    public Completable previous() {
+        return operation(CommandExecutor.Type.PREVIOUS, "skipToPrevious",
+                callback -> player.skipToPrevious(callback),
+                null);
+    }
+
+    /**
+     * Emits when the queue changes
+     */
+    @CheckResult @NonNull
+    public Observable<Queue> queue() { return queueSubject; }
+
+    /**
+     * Returns the current queue
+     */
+    @NonNull
+    public Queue getQueue() {
+        return queueSubject.getValue();
+    }
+
+    private void publishQueue(@NonNull Queue queue) {
+        queueSubject.onNext(queue);
+        requestSessionSave();
+    }
+
+    // SESSION
+
+    /**
+     * Persists the playback state, volume, bitrate and queue into the file or stops persisting them if null
+     * Writes happen at most once a second on the io scheduler and every few seconds while playing
+     */
+    public void setSessionFile(@Nullable File file) {
+        SessionStore sessionStore = this.sessionStore;
+        if (sessionStore != null) {
+            sessionStore.close();
+        }
+        this.sessionStore = file != null ? new SessionStore(file, this::currentSession) : null;
+    }
+
+    /**
+     * Plays the last persisted session from its position and restores its volume, bitrate and queue
+     * The track starts in a single play round trip and the playback state is published without waiting for metadata,
+     * the bitrate and the upcoming tracks of the queue are restored once it plays
+     * Completes without doing anything if there is no session
+     */
+    @CheckResult @NonNull
+    public Completable restoreSession() {
+        return Completable.defer(() -> {
+            SessionStore sessionStore = this.sessionStore;
+            final PlaybackSession session = sessionStore != null ? sessionStore.read() : null;
+            if (session == null || session.uri.isEmpty()) return Completable.complete();
+
+            int position = Math.max(session.position, 0);
+            // the sdk queue is empty after the process has been killed so it starts with the restored track
+            Completable restore = setVolume(session.volume)
+                    .andThen(playUri(session.uri, 0, position, () -> {
+                        publishQueue(Queue.of(session.uri));
+                        publishPlaybackState(new PlayerSnapshot().set(
+                                PlaybackSnapshot.pack(true, position, session.duration),
+                                session.uri, System.currentTimeMillis()));
+                    }));
+            if (session.bitrate != null) {
+                restore = restore.andThen(setPlaybackBitrate(session.bitrate));
+            }
+
+            Queue queue = session.queue;
+            if (session.uri.equals(queue.getCurrent())) {
+                List<String> uris = queue.getUris();
+                for (int i = queue.getIndex() + 1; i < uris.size(); i++) {
+                    restore = restore.andThen(enqueue(uris.get(i)));
                 }
             }
+            return restore;
         });
     }
 
+    private void requestSessionSave() {
+        SessionStore sessionStore = this.sessionStore;
+        if (sessionStore != null) {
+            sessionStore.requestSave();
+        }
+    }
+
+    @Nullable
+    private PlaybackSession currentSession() {
+        long snapshot;
+        String uri;
+        int sequence;
+        do {
+            sequence = snapshotSequence;
+            snapshot = this.snapshot;
+            uri = snapshotUri;
+        } while ((sequence & 1) != 0 || sequence != snapshotSequence);
+        if (uri.isEmpty()) return null; // nothing to restore
+
+        int position = getEstimatedProgress();
+        int duration = PlaybackSnapshot.getDuration(snapshot);
+        if (duration >= 0) {
+            position = Math.min(position, duration);
+        }
+        return new PlaybackSession(PlaybackSnapshot.isPlaying(snapshot), position, duration, uri,
+                audioController.getVolume(), playbackBitrate, getQueue());
+    }
+
     // PAUSE
 
     /**
      * Pauses the current playback
+     * A pause which is still waiting behind another operation is replaced by a later resume and vice versa
      */
     @CheckResult @NonNull
     public Completable pause() {
-        return Completable.create(e -> {
-            if (isInitialized()) {
-                player.pause(new Player.OperationCallback() {
-                    @Override
-                    public void onSuccess() {
-                        if (!e.isDisposed()) {
-                            e.onComplete();
-                        }
-                    }
-
-                    @Override
-                    public void onError(Error error) {
-                        if (!e.isDisposed()) {
-                            e.onError(new Throwable(error.name()));
-                        }
-                    }
-                });
-            } else {
-                if (!e.isDisposed()) {
-                    e.onError(new Throwable(Error.kSpErrorUninitialized.name()));
-                }
-            }
-        });
+        return operation(CommandExecutor.Type.PLAYBACK, "pause", callback -> player.pause(callback), null);
     }
 
     // RESUME
 
     /**
      * Resumes the playback
+     * A resume which is still waiting behind another operation is replaced by a later pause and vice versa
      */
     @CheckResult @NonNull
     public Completable resume() {
-        return Completable.create(e -> {
-            if (isInitialized()) {
-                player.resume(new Player.OperationCallback() {
-                    @Override
-                    public void onSuccess() {
-                        if (!e.isDisposed()) {
-                            e.onComplete();
-                        }
-                    }
-
-                    @Override
-                    public void onError(Error error) {
-                        if (!e.isDisposed()) {
-                            e.onError(new Throwable(error.name()));
-                        }
-                    }
-                });
-            } else {
-                if (!e.isDisposed()) {
-                    e.onError(new Throwable(Error.kSpErrorUninitialized.name()));
+        return Completable.defer(() -> {
+            Completable resume = operation(CommandExecutor.Type.PLAYBACK, "resume",
+                    callback -> player.resume(callback), null);
+            if (audioController.isIdle()) {
+                // the buffered audio has been dropped with the sink so let the sdk deliver it again
+                long position = getAudioPosition();
+                if (position < 0) {
+                    // paused so this is the last published progress
+                    position = getEstimatedProgress();
                 }
+                audioController.wakeUp();
+                if (position < 0) return resume; // nowhere to seek to
+                return seekTo((int) position).andThen(resume);
+            } else {
+                return resume;
             }
         });
     }
@@ -272,45 +472,35 @@ public final class RxSpotifyPlayer {
 
     /**
      * Seeks to the specified position
+     * Seeks which are still waiting behind another operation are collapsed to the latest position
      */
     @CheckResult @NonNull
     public Completable seekTo(@IntRange(from = 0) final int position) {
-        return Completable.create(e -> {
-            if (isInitialized()) {
-                player.seekToPosition(new Player.OperationCallback() {
-                    @Override
-                    public void onSuccess() {
-                        if (!e.isDisposed()) {
-                            e.onComplete();
-                        }
-                        playbackStateSubject.onNext(PlaybackState.extractFromPlayer(player));
-                    }
-
-                    @Override
-                    public void onError(Error error) {
-                        if (!e.isDisposed()) {
-                            e.onError(new Throwable(error.name()));
-                        }
-                    }
-                }, position);
-            } else {
-                if (!e.isDisposed()) {
-                    e.onError(new Throwable(Error.kSpErrorUninitialized.name()));
-                }
-            }
+        return Completable.defer(() -> {
+            // the flush of the seek may arrive before or after the callback
+            int[] flushCount = new int[1];
+            return operation(CommandExecutor.Type.SEEK, "seekToPosition",
+                    callback -> {
+                        flushCount[0] = audioController.getFlushCount();
+                        player.seekToPosition(callback, position);
+                    }, () -> {
+                        audioClock.anchorFlush(position, flushCount[0] + 1);
+                        readPlaybackState();
+                    });
         });
     }
 
     // VOLUME
 
     /**
-     * Sets the volume
+     * Sets the volume, the audio output ramps towards it
      */
     @CheckResult @NonNull
     public Completable setVolume(@FloatRange(from = 0f, to = 1f) final float volume) {
         return Completable.create(e -> {
             if (isInitialized()) {
                 audioController.setVolume(volume);
+                requestSessionSave();
                 if (!e.isDisposed()) {
                     e.onComplete();
                 }
@@ -322,6 +512,269 @@ public final class RxSpotifyPlayer {
         });
     }
 
+    /**
+     * Sets how long and along which curve volume changes are ramped
+     */
+    public void setVolumeRamp(@IntRange(from = 0) long duration, @NonNull TimeUnit unit, @NonNull VolumeRamp ramp) {
+        checkNotNull(unit, "unit == null");
+        checkNotNull(ramp, "ramp == null");
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration must not be negative");
+        }
+        audioController.setVolumeRamp(unit.toMillis(duration), ramp);
+    }
+
+    // AUDIO OUTPUT
+
+    /**
+     * Sets how samples are written to the audio output
+     */
+    public void setAudioOutputMode(@NonNull AudioOutputMode outputMode) {
+        checkNotNull(outputMode, "outputMode == null");
+        audioController.setOutputMode(outputMode);
+    }
+
+    /**
+     * Sets the buffer sizes and performance mode of the audio output
+     * The profile is applied with the next flush or track change
+     */
+    public void setAudioSinkProfile(@NonNull AudioSinkProfile profile) {
+        checkNotNull(profile, "profile == null");
+        audioController.setProfile(profile);
+    }
+
+    /**
+     * Routes the audio of this player into the shared mixer or back to an own audio track if null
+     * Audio in other formats than the mixer accepts still gets an own track
+     * The mixer is applied with the next flush or track change
+     */
+    public void setAudioMixer(@Nullable AudioMixer mixer) {
+        audioController.setMixer(mixer);
+    }
+
+    /**
+     * Grows the audio output buffer on underruns and shrinks it after a stable period
+     * Requires api 24+ and is applied with the next flush or track change
+     */
+    public void setAdaptiveBufferSize(boolean adaptiveBufferSize) {
+        audioController.setAdaptiveBufferSize(adaptiveBufferSize);
+    }
+
+    /**
+     * Emits the changes made by the adaptive buffer sizing
+     * Decisions are emitted on the audio thread so observe them on another scheduler
+     */
+    @CheckResult @NonNull
+    public Observable<BufferSizeDecision> bufferSizeDecisions() {
+        return bufferSizeDecisionsSubject;
+    }
+
+    // CROSSFADE
+
+    /**
+     * Fades the remaining audio of the previous track out over the beginning of the next one when tracks change
+     * The previous track can only contribute what has already been buffered, a duration of 0 disables crossfading
+     */
+    public void setCrossfade(@IntRange(from = 0) long duration, @NonNull TimeUnit unit) {
+        checkNotNull(unit, "unit == null");
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration must not be negative");
+        }
+        audioController.setCrossfade(unit.toMillis(duration));
+    }
+
+    // AUDIO PROCESSING
+
+    /**
+     * Adds a processor to the end of the chain which runs on every block before it is written to the audio output
+     */
+    public void addAudioProcessor(@NonNull AudioProcessor processor) {
+        checkNotNull(processor, "processor == null");
+        audioController.addProcessor(processor);
+    }
+
+    /**
+     * Removes the processor from the chain
+     */
+    public void removeAudioProcessor(@NonNull AudioProcessor processor) {
+        checkNotNull(processor, "processor == null");
+        audioController.removeProcessor(processor);
+    }
+
+    // IDLE
+
+    /**
+     * Releases the audio track and the sample buffer after being paused for the timeout, 0 disables it
+     * {@link #resume()} restores them and continues where the audio has stopped
+     */
+    public void setIdleTimeout(@IntRange(from = 0) long timeout, @NonNull TimeUnit unit) {
+        checkNotNull(unit, "unit == null");
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        idleTimeoutMs = unit.toMillis(timeout);
+        if (isInitialized() && !getPlaybackState().isPlaying()) {
+            scheduleIdle();
+        }
+    }
+
+    /**
+     * Emits when the audio output goes idle and when it is active again with the wake up time
+     * Active transitions are emitted on the audio threads so observe them on another scheduler
+     */
+    @CheckResult @NonNull
+    public Observable<IdleTransition> idleTransitions() {
+        return idleTransitionsSubject;
+    }
+
+    /**
+     * Returns whether the audio output is idle
+     */
+    public boolean isIdle() {
+        return audioController.isIdle();
+    }
+
+    private synchronized void scheduleIdle() {
+        cancelIdle();
+        long idleTimeoutMs = this.idleTimeoutMs;
+        if (idleTimeoutMs > 0) {
+            idleTimer = Completable.timer(idleTimeoutMs, TimeUnit.MILLISECONDS)
+                    .subscribe(audioController::enterIdle);
+        }
+    }
+
+    private synchronized void cancelIdle() {
+        if (idleTimer != null) {
+            idleTimer.dispose();
+            idleTimer = null;
+        }
+    }
+
+    // ANALYSIS
+
+    /**
+     * Emits the spectrum of the audio which is being played at most frames per second times
+     * The fft runs on the computation scheduler and nothing is captured while there are no subscribers
+     */
+    @CheckResult @NonNull
+    public Flowable<Spectrum> spectrum(@IntRange(from = 1) int framesPerSecond) {
+        Flowable<float[]> frames = analysisFrames(framesPerSecond);
+        return Flowable.defer(() -> {
+            SpectrumAnalyzer analyzer = new SpectrumAnalyzer(AnalysisTap.FRAME_SIZE);
+            return frames.map(frame -> analyzer.analyze(frame,
+                    audioController.getAnalysisTap().getFrameSampleRate(), System.currentTimeMillis()));
+        });
+    }
+
+    /**
+     * Emits the waveform of the audio which is being played at most frames per second times
+     * Nothing is captured while there are no subscribers
+     */
+    @CheckResult @NonNull
+    public Flowable<Waveform> waveform(@IntRange(from = 1) int framesPerSecond) {
+        return analysisFrames(framesPerSecond)
+                .map(frame -> new Waveform(frame.clone(),
+                        audioController.getAnalysisTap().getFrameSampleRate(), System.currentTimeMillis()));
+    }
+
+    private Flowable<float[]> analysisFrames(int framesPerSecond) {
+        if (framesPerSecond < 1) {
+            throw new IllegalArgumentException("framesPerSecond must be positive");
+        }
+        AnalysisTap tap = audioController.getAnalysisTap();
+        return Flowable.defer(() -> {
+            float[] frame = new float[AnalysisTap.FRAME_SIZE];
+            long[] lastSequence = new long[1];
+            return idleSubject.toFlowable(BackpressureStrategy.LATEST)
+                    .distinctUntilChanged()
+                    .switchMap(idle -> {
+                        // nothing is played while idle
+                        if (idle) return Flowable.<Long>empty();
+                        return Flowable.interval(0, TimeUnit.SECONDS.toMicros(1) / framesPerSecond,
+                                TimeUnit.MICROSECONDS)
+                                .onBackpressureDrop();
+                    })
+                    .filter(aLong -> {
+                        // skip the tick if the pump has not published a new frame
+                        long sequence = tap.read(frame);
+                        if (sequence == lastSequence[0]) return false;
+                        lastSequence[0] = sequence;
+                        return true;
+                    })
+                    .map(aLong -> frame)
+                    .doOnSubscribe(subscription -> tap.acquire())
+                    .doFinally(tap::release);
+        });
+    }
+
+    // BUFFERING
+
+    /**
+     * Sets how much audio has to be buffered before playback starts and below which it pauses to rebuffer
+     * The high watermark is limited to three quarters of the sample buffer of the sink profile
+     */
+    public void setBufferWatermarks(@IntRange(from = 0) long lowWatermark,
+                                    @IntRange(from = 0) long highWatermark,
+                                    @NonNull TimeUnit unit) {
+        checkNotNull(unit, "unit == null");
+        if (lowWatermark < 0 || highWatermark < lowWatermark) {
+            throw new IllegalArgumentException("0 <= lowWatermark <= highWatermark required");
+        }
+        audioController.setWatermarks(unit.toMillis(lowWatermark), unit.toMillis(highWatermark));
+    }
+
+    /**
+     * Emits whether the audio output is waiting for the buffer to fill
+     * Changes are emitted on the audio threads so observe them on another scheduler
+     */
+    @CheckResult @NonNull
+    public Observable<Boolean> buffering() {
+        return bufferingSubject.distinctUntilChanged();
+    }
+
+    /**
+     * Returns whether the audio output is waiting for the buffer to fill
+     */
+    public boolean isBuffering() {
+        return audioController.isBuffering();
+    }
+
+    /**
+     * Emits the number of new underruns of the audio track, the track is polled every 100 ms while subscribed
+     * Underruns are only reported on api 24+ and not while the audio goes through a mixer
+     */
+    @CheckResult @NonNull
+    public Observable<Integer> underruns() {
+        return underrunsSubject
+                .doOnSubscribe(disposable -> {
+                    if (underrunSubscribers.getAndIncrement() == 0) {
+                        audioController.setUnderrunListener(underrunsSubject::onNext);
+                    }
+                })
+                .doFinally(() -> {
+                    if (underrunSubscribers.decrementAndGet() == 0) {
+                        audioController.setUnderrunListener(null);
+                    }
+                });
+    }
+
+    /**
+     * Emits how far the buffer is filled towards the high watermark from 0 to 1 in the interval
+     */
+    @CheckResult @NonNull
+    public Observable<Float> bufferLevel(@IntRange(from = 1) long interval, @NonNull TimeUnit unit) {
+        checkNotNull(unit, "unit == null");
+        return idleSubject
+                .distinctUntilChanged()
+                .switchMap(idle -> {
+                    // the buffer is empty while idle
+                    if (idle) return Observable.just(0f);
+                    return Observable.interval(0, interval, unit)
+                            .map(aLong -> audioController.getBufferLevel());
+                })
+                .distinctUntilChanged();
+    }
+
     // CONNECTIVITY
 
     /**
@@ -330,62 +783,53 @@ public final class RxSpotifyPlayer {
     @CheckResult @NonNull
     public Completable setConnectivity(@NonNull final NetworkInfo info) {
         checkNotNull(info, "info == null");
-        return Completable.create(e -> {
-            if (isInitialized()) {
-                Connectivity connectivity;
-                if (info.isConnected()) {
-                    connectivity = Connectivity.fromNetworkType(info.getType());
-                } else {
-                    connectivity = Connectivity.OFFLINE;
-                }
-                player.setConnectivityStatus(new Player.OperationCallback() {
-                    @Override
-                    public void onSuccess() {
-                        if (!e.isDisposed()) {
-                            e.onComplete();
-                        }
-                    }
-
-                    @Override
-                    public void onError(Error error) {
-                        if (!e.isDisposed()) {
-                            e.onError(new Throwable(error.name()));
-                        }
-                    }
-                }, connectivity);
-            } else {
-                if (!e.isDisposed()) {
-                    e.onError(new Throwable(Error.kSpErrorUninitialized.name()));
-                }
-            }
-        });
+        final Connectivity connectivity;
+        if (info.isConnected()) {
+            connectivity = Connectivity.fromNetworkType(info.getType());
+        } else {
+            connectivity = Connectivity.OFFLINE;
+        }
+        return operation(CommandExecutor.Type.CONNECTIVITY, "setConnectivityStatus",
+                callback -> player.setConnectivityStatus(callback, connectivity), null);
     }
 
     // BITRATE
 
+    /**
+     * Returns the last bitrate which has been set or null if the sdk default is used
+     */
+    @Nullable
+    public PlaybackBitrate getPlaybackBitrate() {
+        return playbackBitrate;
+    }
+
     /**
      * Sets the playback bitrate
      */
     @CheckResult @NonNull
     public Completable setPlaybackBitrate(@NonNull final PlaybackBitrate playbackBitrate) {
         checkNotNull(playbackBitrate, "playbackBitrate == null");
+        return operation(CommandExecutor.Type.BITRATE, "setPlaybackBitrate",
+                callback -> player.setPlaybackBitrate(callback, playbackBitrate), () -> {
+                    this.playbackBitrate = playbackBitrate;
+                    requestSessionSave();
+                });
+    }
+
+    private Completable operation(@NonNull CommandExecutor.Type type,
+                                  @NonNull String name,
+                                  @NonNull CommandExecutor.Action action,
+                                  @Nullable Runnable onSuccess) {
         return Completable.create(e -> {
             if (isInitialized()) {
-                player.setPlaybackBitrate(new Player.OperationCallback() {
-                    @Override
-                    public void onSuccess() {
-                        if (!e.isDisposed()) {
-                            e.onComplete();
-                        }
-                    }
-
-                    @Override
-                    public void onError(Error error) {
-                        if (!e.isDisposed()) {
-                            e.onError(new Throwable(error.name()));
-                        }
+                commandExecutor.submit(type, name, callback -> {
+                    // the player might have been released while we were waiting
+                    if (isInitialized()) {
+                        action.run(callback);
+                    } else {
+                        callback.onError(Error.kSpErrorUninitialized);
                     }
-                }, playbackBitrate);
+                }, onSuccess, e);
             } else {
                 if (!e.isDisposed()) {
                     e.onError(new Throwable(Error.kSpErrorUninitialized.name()));
@@ -394,6 +838,19 @@ public final class RxSpotifyPlayer {
         });
     }
 
+    private static String toUri(String playContext) {
+        // plain ids are track ids
+        if (!playContext.startsWith(SPOTIFY_URI_PREFIX)) {
+            return URI_PREFIX + playContext;
+        } else {
+            return playContext;
+        }
+    }
+
+    private static boolean isTrackUri(String uri) {
+        return uri.startsWith(URI_PREFIX);
+    }
+
     /**
      * Returns whether the player is initialized
      */
@@ -407,19 +864,160 @@ public final class RxSpotifyPlayer {
      * Emits when the playback state changes
      */
     @CheckResult @NonNull
-    public Observable<PlaybackState> playbackState() { return playbackStateSubject; }
+    public Observable<PlaybackState> playbackState() {
+        return Observable.defer(() -> {
+            // the replayed state is stale if nobody was listening so it is replaced by the current one,
+            // the subject itself is only fed by the sdk thread
+            final boolean[] replayed = { false };
+            return playbackStateSubject.map(playbackState -> {
+                if (replayed[0]) return playbackState;
+                replayed[0] = true;
+                return getPlaybackState();
+            });
+        });
+    }
+
+    /**
+     * Emits distinct playback states on the scheduler,
+     * bursts within the window are conflated to the latest state
+     */
+    @CheckResult @NonNull
+    public Flowable<PlaybackState> playbackState(@IntRange(from = 0) long window,
+                                                 @NonNull TimeUnit unit,
+                                                 @NonNull Scheduler scheduler) {
+        checkNotNull(unit, "unit == null");
+        checkNotNull(scheduler, "scheduler == null");
+        Flowable<PlaybackState> states = playbackState()
+                .toFlowable(BackpressureStrategy.LATEST)
+                .distinctUntilChanged();
+        if (window > 0) {
+            // emit last makes sure the final state of a burst is never lost
+            states = states.sample(window, unit, scheduler, true);
+        }
+        return states
+                .onBackpressureLatest()
+                .observeOn(scheduler, false, 1);
+    }
 
     /**
      * Returns the last known playback state
      */
     @NonNull
     public PlaybackState getPlaybackState() {
-        if (playbackState == null) {
-            playbackState = PlaybackState.extractFromPlayer(player);
+        long snapshot;
+        long timestamp;
+        String uri;
+        int sequence;
+        do {
+            sequence = snapshotSequence;
+            snapshot = this.snapshot;
+            timestamp = snapshotTimestamp;
+            uri = snapshotUri;
+        } while ((sequence & 1) != 0 || sequence != snapshotSequence);
+
+        PlaybackState playbackState = this.playbackState;
+        if (!playbackState.matches(snapshot, uri, timestamp)) {
+            // nobody was listening when the state changed so the object is created on demand
+            playbackState = PlaybackState.fromSnapshot(snapshot, uri, timestamp);
+            this.playbackState = playbackState;
         }
         return playbackState;
     }
 
+    /**
+     * Returns the last known playback state packed into a {@link PlaybackSnapshot} without allocating
+     */
+    public long getPlaybackSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the estimated progress of the last known playback state without allocating
+     */
+    public int getEstimatedProgress() {
+        long snapshot;
+        long timestamp;
+        int sequence;
+        do {
+            sequence = snapshotSequence;
+            snapshot = this.snapshot;
+            timestamp = snapshotTimestamp;
+        } while ((sequence & 1) != 0 || sequence != snapshotSequence);
+
+        int progress = PlaybackSnapshot.getProgress(snapshot);
+        if (PlaybackSnapshot.isPlaying(snapshot)) {
+            return (int) (progress + (System.currentTimeMillis() - timestamp)); // add the time difference
+        } else {
+            return progress;
+        }
+    }
+
+    /**
+     * Returns the position in ms of the audio which has actually been played by the audio output or -1
+     * Unlike the estimated progress this does not depend on the wall clock and includes the output latency
+     */
+    public long getAudioPosition() {
+        return audioClock.getPosition();
+    }
+
+    /**
+     * Emits the position of the played audio in the interval while playing
+     */
+    @CheckResult @NonNull
+    public Observable<Long> audioPosition(@IntRange(from = 1) long interval, @NonNull TimeUnit unit) {
+        checkNotNull(unit, "unit == null");
+        return playbackState()
+                .switchMap(playbackState -> {
+                    if (playbackState.isPlaying()) {
+                        return Observable.interval(0, interval, unit)
+                                .map(aLong -> getAudioPosition());
+                    } else {
+                        return Observable.fromCallable(this::getAudioPosition);
+                    }
+                })
+                .distinctUntilChanged();
+    }
+
+    /**
+     * Returns the number of native state and metadata reads made so far
+     */
+    @VisibleForTesting
+    long getNativeReadCount() {
+        return nativeReads.get();
+    }
+
+    private void readPlaybackState() {
+        playbackEventHandler.onStateChanged();
+    }
+
+    // called by the sdk thread only, it is the single writer of the snapshot
+    @VisibleForTesting
+    void publishPlaybackState(@NonNull PlayerSnapshot playerSnapshot) {
+        long timestamp = playerSnapshot.timestamp;
+        long snapshot = playerSnapshot.state;
+        String uri = playerSnapshot.uri;
+
+        int sequence = snapshotSequence;
+        snapshotSequence = sequence + 1;
+        this.snapshot = snapshot;
+        snapshotTimestamp = timestamp;
+        snapshotUri = uri;
+        snapshotSequence = sequence + 2;
+        requestSessionSave();
+
+        int progress = PlaybackSnapshot.getProgress(snapshot);
+        if (progress >= 0) {
+            audioClock.anchor(progress);
+        }
+
+        // nobody is listening the state object will be created on demand
+        if (playbackStateSubject.hasObservers()) {
+            PlaybackState playbackState = PlaybackState.fromSnapshot(snapshot, uri, timestamp);
+            this.playbackState = playbackState;
+            playbackStateSubject.onNext(playbackState);
+        }
+    }
+
     // COMPLETION
 
     /**
@@ -438,46 +1036,112 @@ public final class RxSpotifyPlayer {
     @CheckResult @NonNull
     public Observable<Error> errors() { return errorsSubject; }
 
+    // METRICS
+
+    /**
+     * Sets the sink which receives operation latencies, errors, events and audio counters or null to disable it
+     */
+    public void setMetricsSink(@Nullable MetricsSink sink) {
+        metrics.setSink(sink);
+    }
+
+    /**
+     * Emits a snapshot of the recorded metrics in the interval
+     * Recording starts with the first call and continues for the lifetime of the player
+     */
+    @CheckResult @NonNull
+    public Observable<MetricsSnapshot> metrics(@IntRange(from = 1) long interval, @NonNull TimeUnit unit) {
+        checkNotNull(unit, "unit == null");
+        final PlayerMetrics recorder = metrics.getRecorder();
+        return Observable.interval(interval, unit)
+                .map(aLong -> recorder.snapshot());
+    }
+
     // CALLBACKS
 
-    private boolean pendingChange;
-    private SpotifyPlayer.NotificationCallback notificationCallback = new Player.NotificationCallback() {
+    // counts every native read so the reads per event can be verified
+    private final PlayerSnapshot.Source playerSource = new PlayerSnapshot.Source() {
+        @Nullable
         @Override
-        public void onPlaybackEvent(PlayerEvent playerEvent) {
-            if (player == null || !player.isLoggedIn()) return; // ignore
+        public com.spotify.sdk.android.player.PlaybackState getPlaybackState() {
+            SpotifyPlayer player = RxSpotifyPlayer.this.player;
+            if (player == null) return null;
+            nativeReads.incrementAndGet();
+            return player.getPlaybackState();
+        }
 
-            switch (playerEvent) {
-                case kSpPlaybackNotifyAudioDeliveryDone:
-                    if (player.getPlaybackState() != null && !player.getPlaybackState().isPlaying
-                            && player.getMetadata() != null && player.getMetadata().currentTrack != null) {
-                        // track has completed
-                        completionSubject.onNext(Notification.INSTANCE);
-                    }
-                    break;
-                case kSpPlaybackNotifyPlay:
-                case kSpPlaybackNotifyPause:
-                    // update playback state here only if we have meta data
-                    if (player.getMetadata() != null && player.getMetadata().currentTrack != null) {
-                        playbackState = PlaybackState.extractFromPlayer(player);
-                        playbackStateSubject.onNext(playbackState);
+        @Nullable
+        @Override
+        public Metadata getMetadata() {
+            SpotifyPlayer player = RxSpotifyPlayer.this.player;
+            if (player == null) return null;
+            nativeReads.incrementAndGet();
+            return player.getMetadata();
+        }
+    };
+
+    private final PlaybackEventHandler playbackEventHandler = new PlaybackEventHandler(playerSource,
+            new PlaybackEventHandler.Listener() {
+                @Override
+                public void onAudioDeliveryDone() {
+                    // play out what is left in the buffer
+                    audioController.onAudioDeliveryDone();
+                }
+
+                @Override
+                public void onCompletion() {
+                    completionSubject.onNext(Notification.INSTANCE);
+                }
+
+                @Override
+                public void onPlayingChanged(boolean playing) {
+                    // release the sink after being paused for a while
+                    if (playing) {
+                        cancelIdle();
                     } else {
-                        // otherwise set pending change
-                        pendingChange = true;
+                        scheduleIdle();
                     }
-                    break;
-                case kSpPlaybackNotifyMetadataChanged:
-                    // now we can create a valid playback state
-                    if (pendingChange) {
-                        playbackState = PlaybackState.extractFromPlayer(player);
-                        playbackStateSubject.onNext(playbackState);
-                        pendingChange = false;
+                }
+
+                @Override
+                public void onTrackChanged(@NonNull String uri) {
+                    // a flush around this time is a track change and gets crossfaded
+                    audioController.onTrackChanged();
+                    audioClock.onTrackChanged();
+
+                    // the sdk moved on to another track of the queue, also after a skip
+                    if (!uri.isEmpty()) {
+                        Queue queue = getQueue();
+                        Queue newQueue = queue.moveTo(uri);
+                        if (newQueue != queue) {
+                            publishQueue(newQueue);
+                        }
                     }
-                    break;
+                }
+
+                @Override
+                public void onPlaybackState(@NonNull PlayerSnapshot snapshot) {
+                    publishPlaybackState(snapshot);
+                }
+            });
+
+    private SpotifyPlayer.NotificationCallback notificationCallback = new Player.NotificationCallback() {
+        @Override
+        public void onPlaybackEvent(PlayerEvent playerEvent) {
+            if (player == null || !player.isLoggedIn()) return; // ignore
+
+            if (metrics.isEnabled()) {
+                metrics.onPlaybackEvent(playerEvent);
             }
+
+            playbackEventHandler.onPlaybackEvent(playerEvent);
         }
 
         @Override
         public void onPlaybackError(Error error) {
+            if (metrics.isEnabled()) {
+                metrics.onPlaybackError(error);
+            }
             errorsSubject.onNext(error);
         }
     };
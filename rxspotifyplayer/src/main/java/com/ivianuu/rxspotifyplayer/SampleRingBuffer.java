@@ -0,0 +1,186 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wait-free single producer single consumer ring buffer for pcm samples
+ *
+ * The producer thread may only call the write and clear methods,
+ * the consumer thread may only call {@link #peek(short[])}, {@link #remove(int)} and the drop methods.
+ * A clear only records the position, the consumer drops the samples so the head has a single writer.
+ */
+final class SampleRingBuffer {
+
+    private final short[] buffer;
+    private final int mask;
+
+    // next sequence to read, owned by the consumer
+    private final Sequence head = new Sequence();
+    // next sequence to write, owned by the producer
+    private final Sequence tail = new Sequence();
+    // the samples before it have been cleared by the producer
+    private volatile long flushPosition;
+
+    // producer side cache of the head to avoid reading the volatile on every write
+    private long headCache;
+    // consumer side cache of the tail
+    private long tailCache;
+    // head at the time of the last peek
+    private long peekHead;
+
+    SampleRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size != capacity) {
+            size <<= 1; // round up to the next power of two
+        }
+        this.buffer = new short[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Writes up to sampleCount samples and returns the number of samples written
+     */
+    int write(@NonNull short[] samples, int sampleCount) {
+        return write(samples, 0, sampleCount);
+    }
+
+    /**
+     * Writes up to sampleCount samples starting at the offset and returns the number of samples written
+     * Cleared samples take up space until the consumer has dropped them
+     */
+    int write(@NonNull short[] samples, int sampleOffset, int sampleCount) {
+        long t = tail.get();
+        int free = buffer.length - (int) (t - headCache);
+        if (free < sampleCount) {
+            headCache = head.get();
+            free = buffer.length - (int) (t - headCache);
+        }
+
+        int count = Math.min(free, sampleCount);
+        if (count <= 0) return 0;
+
+        int offset = (int) t & mask;
+        int firstPart = Math.min(count, buffer.length - offset);
+        System.arraycopy(samples, sampleOffset, buffer, offset, firstPart);
+        if (firstPart < count) {
+            System.arraycopy(samples, sampleOffset + firstPart, buffer, 0, count - firstPart);
+        }
+
+        tail.lazySet(t + count); // publish
+        return count;
+    }
+
+    /**
+     * Clears all samples written so far, they are dropped by the consumer before its next peek
+     */
+    void clear() {
+        flushPosition = tail.get();
+    }
+
+    /**
+     * Copies up to target.length samples without removing them and returns the count
+     * Samples which have been cleared are dropped first
+     */
+    int peek(@NonNull short[] target) {
+        long h = head.get();
+        long f = flushPosition;
+        if (f > h) {
+            h = f;
+            head.lazySet(h);
+        }
+        peekHead = h;
+        int available = (int) (tailCache - h);
+        if (available < target.length) {
+            tailCache = tail.get();
+            available = (int) (tailCache - h);
+        }
+
+        int count = Math.min(available, target.length);
+        if (count <= 0) return 0;
+
+        copy(h, target, count);
+        return count;
+    }
+
+    /**
+     * Removes the count oldest samples of the last peek
+     */
+    void remove(int count) {
+        if (count <= 0) return;
+        peekHead += count;
+        head.lazySet(peekHead);
+    }
+
+    /**
+     * Returns whether the producer has cleared samples which have not been dropped yet
+     */
+    boolean hasClearedSamples() {
+        return flushPosition > head.get();
+    }
+
+    /**
+     * Drops the cleared samples
+     */
+    void dropCleared() {
+        long f = flushPosition;
+        if (f > head.get()) {
+            head.lazySet(f);
+            peekHead = f;
+        }
+    }
+
+    /**
+     * Drops the cleared samples after copying up to maxCount of the oldest into the target
+     * Returns the number of copied samples
+     */
+    int dropCleared(@NonNull short[] target, int maxCount) {
+        long h = head.get();
+        long f = flushPosition;
+        if (f <= h) return 0;
+
+        int count = (int) Math.min(f - h, Math.min(maxCount, target.length));
+        if (count > 0) {
+            copy(h, target, count);
+        }
+        head.lazySet(f);
+        peekHead = f;
+        return Math.max(count, 0);
+    }
+
+    /**
+     * Returns the number of readable samples which have not been cleared
+     */
+    int size() {
+        long h = Math.max(head.get(), flushPosition);
+        return (int) Math.max(tail.get() - h, 0);
+    }
+
+    /**
+     * Returns the capacity in samples
+     */
+    int capacity() {
+        return buffer.length;
+    }
+
+    private void copy(long sequence, @NonNull short[] target, int count) {
+        int offset = (int) sequence & mask;
+        int firstPart = Math.min(count, buffer.length - offset);
+        System.arraycopy(buffer, offset, target, 0, firstPart);
+        if (firstPart < count) {
+            System.arraycopy(buffer, 0, target, firstPart, count - firstPart);
+        }
+    }
+
+    /**
+     * Sequence counter padded to its own cache line to avoid false sharing
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence extends AtomicLong {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
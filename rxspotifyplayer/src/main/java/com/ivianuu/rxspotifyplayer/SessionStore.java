@@ -0,0 +1,261 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.spotify.sdk.android.player.PlaybackBitrate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Persists the playback session into a small memory mapped file
+ *
+ * The file has two slots which are written alternately, each slot is
+ * sequence (long), crc (int), payload length (int) and the payload.
+ * A write which is cut off by the process being killed breaks the crc of its slot
+ * so the other slot with the previous session is used instead.
+ */
+final class SessionStore {
+
+    private static final int VERSION = 1;
+    private static final int SLOT_SIZE = 2048;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAX_PAYLOAD_SIZE = SLOT_SIZE - HEADER_SIZE;
+    private static final long MIN_WRITE_INTERVAL_MS = 1000;
+    // keeps the position fresh while playing
+    private static final long PLAYING_WRITE_INTERVAL_MS = 5000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final Callable<PlaybackSession> source;
+
+    // guarded by this
+    @Nullable
+    private MappedByteBuffer buffer;
+    private long sequence = -1;
+    private boolean writeScheduled;
+    private long lastWrite;
+    private boolean closed;
+
+    SessionStore(@NonNull File file, @NonNull Callable<PlaybackSession> source) {
+        this.file = file;
+        this.source = source;
+    }
+
+    /**
+     * Writes the current session on the io scheduler, writes are at least a second apart
+     */
+    synchronized void requestSave() {
+        if (writeScheduled || closed) return;
+        writeScheduled = true;
+        long delay = Math.max(lastWrite + MIN_WRITE_INTERVAL_MS - SystemClock.elapsedRealtime(), 0);
+        Schedulers.io().scheduleDirect(this::save, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the last saved session or null
+     */
+    @Nullable
+    synchronized PlaybackSession read() {
+        try {
+            ByteBuffer buffer = map();
+            int slot = latestSlot(buffer);
+            if (slot < 0) return null;
+            ByteBuffer payload = slice(buffer, slot * SLOT_SIZE + HEADER_SIZE,
+                    buffer.getInt(slot * SLOT_SIZE + 12));
+            return decode(payload);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace(); // start without a session
+            return null;
+        }
+    }
+
+    /**
+     * Stops writing, a scheduled write is dropped
+     */
+    synchronized void close() {
+        closed = true;
+        buffer = null; // unmapped once collected
+    }
+
+    private void save() {
+        PlaybackSession session;
+        try {
+            session = source.call();
+        } catch (Exception e) {
+            session = null;
+        }
+
+        synchronized (this) {
+            writeScheduled = false;
+            if (closed) return;
+            lastWrite = SystemClock.elapsedRealtime();
+            if (session != null) {
+                try {
+                    write(session);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace(); // the previous session stays valid
+                }
+            }
+        }
+
+        if (session != null && session.playing) {
+            requestSaveDelayed();
+        }
+    }
+
+    private synchronized void requestSaveDelayed() {
+        if (writeScheduled || closed) return;
+        writeScheduled = true;
+        Schedulers.io().scheduleDirect(this::save, PLAYING_WRITE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void write(PlaybackSession session) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(MAX_PAYLOAD_SIZE);
+        encode(session, payload);
+        payload.flip();
+
+        MappedByteBuffer buffer = map();
+        if (sequence < 0) {
+            int slot = latestSlot(buffer);
+            sequence = slot < 0 ? 0 : buffer.getLong(slot * SLOT_SIZE);
+        }
+        long sequence = this.sequence + 1;
+        // never overwrite the slot of the latest valid session
+        int offset = (int) (sequence & 1) * SLOT_SIZE;
+
+        int length = payload.remaining();
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+
+        buffer.position(offset + HEADER_SIZE);
+        buffer.put(payload);
+        buffer.putLong(offset, sequence);
+        buffer.putInt(offset + 8, (int) crc.getValue());
+        buffer.putInt(offset + 12, length);
+        this.sequence = sequence;
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        if (buffer == null) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                // the mapping stays valid after the file has been closed
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SLOT_SIZE * 2);
+            }
+        }
+        return buffer;
+    }
+
+    private static int latestSlot(ByteBuffer buffer) {
+        int latest = -1;
+        long latestSequence = 0;
+        for (int slot = 0; slot < 2; slot++) {
+            int offset = slot * SLOT_SIZE;
+            long sequence = buffer.getLong(offset);
+            int length = buffer.getInt(offset + 12);
+            if (sequence <= 0 || length <= 0 || length > MAX_PAYLOAD_SIZE) continue;
+
+            byte[] payload = new byte[length];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset + HEADER_SIZE);
+            duplicate.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(offset + 8)) continue;
+
+            if (sequence > latestSequence) {
+                latest = slot;
+                latestSequence = sequence;
+            }
+        }
+        return latest;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    private static void encode(PlaybackSession session, ByteBuffer payload) {
+        payload.put((byte) VERSION);
+        payload.put((byte) (session.playing ? 1 : 0));
+        payload.putInt(session.position);
+        payload.putInt(session.duration);
+        payload.putFloat(session.volume);
+        payload.put((byte) (session.bitrate != null ? session.bitrate.ordinal() : -1));
+        putString(payload, session.uri);
+
+        // the queue is cut off at the end of the slot
+        List<String> uris = session.queue.getUris();
+        int countPosition = payload.position();
+        payload.putInt(session.queue.getIndex());
+        payload.putShort((short) 0);
+        int count = 0;
+        for (String uri : uris) {
+            int position = payload.position();
+            try {
+                putString(payload, uri);
+            } catch (BufferOverflowException e) {
+                payload.position(position);
+                break;
+            }
+            count++;
+        }
+        payload.putShort(countPosition + 4, (short) count);
+    }
+
+    @Nullable
+    private static PlaybackSession decode(ByteBuffer payload) {
+        if (payload.get() != VERSION) return null;
+        boolean playing = payload.get() != 0;
+        int position = payload.getInt();
+        int duration = payload.getInt();
+        float volume = payload.getFloat();
+        int bitrateOrdinal = payload.get();
+        PlaybackBitrate[] bitrates = PlaybackBitrate.values();
+        PlaybackBitrate bitrate = bitrateOrdinal >= 0 && bitrateOrdinal < bitrates.length
+                ? bitrates[bitrateOrdinal] : null;
+        String uri = getString(payload);
+
+        int index = payload.getInt();
+        int count = payload.getShort();
+        List<String> uris = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uris.add(getString(payload));
+        }
+
+        return new PlaybackSession(playing, position, duration, uri, volume, bitrate, Queue.of(uris, index));
+    }
+
+    private static void putString(ByteBuffer payload, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        if (payload.remaining() < 2 + bytes.length) {
+            throw new BufferOverflowException();
+        }
+        payload.putShort((short) bytes.length);
+        payload.put(bytes);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getShort()];
+        payload.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
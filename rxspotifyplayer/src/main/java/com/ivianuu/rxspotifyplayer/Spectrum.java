@@ -0,0 +1,55 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Magnitudes of the frequencies of the audio which has just been played
+ */
+public final class Spectrum {
+
+    private final float[] magnitudes;
+    private final int sampleRate;
+    private final long timestamp;
+
+    Spectrum(@NonNull float[] magnitudes, int sampleRate, long timestamp) {
+        this.magnitudes = magnitudes;
+        this.sampleRate = sampleRate;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns the magnitude of each bin where 1 is a full scale sine, do not modify the array
+     */
+    @NonNull
+    public float[] getMagnitudes() {
+        return magnitudes;
+    }
+
+    /**
+     * Returns the number of bins
+     */
+    public int getBinCount() {
+        return magnitudes.length;
+    }
+
+    /**
+     * Returns the center frequency of the bin in hz
+     */
+    public float getFrequency(int bin) {
+        return bin * sampleRate / (2f * magnitudes.length);
+    }
+
+    /**
+     * Returns the sample rate the spectrum was computed at
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns when the spectrum was computed
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
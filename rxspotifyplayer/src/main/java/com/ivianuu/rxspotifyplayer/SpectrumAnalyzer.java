@@ -0,0 +1,45 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Turns frames of the analysis tap into spectra, one instance per subscriber
+ */
+final class SpectrumAnalyzer {
+
+    private final Fft fft;
+    private final float[] window;
+    private final float[] re;
+    private final float[] im;
+    private final float scale;
+
+    SpectrumAnalyzer(int size) {
+        fft = new Fft(size);
+        window = new float[size];
+        float windowSum = 0f;
+        for (int i = 0; i < size; i++) {
+            // hann
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (size - 1)));
+            windowSum += window[i];
+        }
+        re = new float[size];
+        im = new float[size];
+        scale = 2f / windowSum;
+    }
+
+    @NonNull
+    Spectrum analyze(@NonNull float[] frame, int sampleRate, long timestamp) {
+        int size = fft.size();
+        for (int i = 0; i < size; i++) {
+            re[i] = frame[i] * window[i];
+            im[i] = 0f;
+        }
+        fft.transform(re, im);
+
+        float[] magnitudes = new float[size / 2];
+        for (int i = 0; i < magnitudes.length; i++) {
+            magnitudes[i] = (float) Math.sqrt(re[i] * re[i] + im[i] * im[i]) * scale;
+        }
+        return new Spectrum(magnitudes, sampleRate, timestamp);
+    }
+}
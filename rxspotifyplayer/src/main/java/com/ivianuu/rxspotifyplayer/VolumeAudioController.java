@@ -1,163 +1,1025 @@
 package com.ivianuu.rxspotifyplayer;
 
+import android.annotation.TargetApi;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioTrack;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.spotify.sdk.android.player.AudioController;
-import com.spotify.sdk.android.player.AudioRingBuffer;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Author IVIanuu.
  */
 final class VolumeAudioController implements AudioController {
 
-    private static final int AUDIO_BUFFER_SIZE_SAMPLES = 4096;
-    private static final int AUDIO_BUFFER_CAPACITY = 81920;
-    @Nullable
-    private static AudioTrack audioTrack;
-    private static float volume = AudioTrack.getMaxVolume();
-    private final AudioRingBuffer audioBuffer = new AudioRingBuffer(AUDIO_BUFFER_CAPACITY);
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    /**
+     * Receives buffering changes
+     */
+    interface BufferingListener {
+        void onBufferingChanged(boolean buffering);
+    }
+
+    /**
+     * Receives idle transitions
+     */
+    interface IdleListener {
+        void onIdleTransition(@NonNull IdleTransition transition);
+    }
+
+    /**
+     * Receives the number of new underruns of the audio track
+     */
+    interface UnderrunListener {
+        void onUnderruns(int count);
+    }
+
+    private static final int AUDIO_BUFFER_SIZE_SAMPLES = AudioProcessor.MAX_BLOCK_SAMPLES;
+    private static final long DEFAULT_OUTPUT_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // how much an adaptive track buffer can grow beyond the size of the profile
+    private static final int ADAPTIVE_CAPACITY_FACTOR = 4;
+    private static final long UNDERRUN_POLL_INTERVAL_MS = 100;
+    // keeps the pump fed until the buffer of the profile is restored with the next track
+    private static final int IDLE_BUFFER_CAPACITY = AUDIO_BUFFER_SIZE_SAMPLES;
+    static final long DEFAULT_LOW_WATERMARK_MS = 50;
+    static final long DEFAULT_HIGH_WATERMARK_MS = 250;
+    private final MetricsDispatcher metrics;
+    private volatile SampleRingBuffer audioBuffer = new SampleRingBuffer(AudioSinkProfile.BALANCED.sampleBufferCapacity);
     private final Object playingMutex = new Object();
-    private final Runnable audioRunnable = new Runnable() {
-        final short[] pendingSamples = new short[AUDIO_BUFFER_SIZE_SAMPLES];
+    private final AudioTrackPool audioTrackPool = new AudioTrackPool();
+    // the output is either an own track or a session of the mixer
+    @Nullable
+    private volatile AudioTrack audioTrack;
+    @Nullable
+    private volatile MixerSession mixerSession;
+    @Nullable
+    private volatile AudioMixer mixer;
+    private final GainStage gainStage = new GainStage();
+    private final AudioProcessorChain processorChain = new AudioProcessorChain();
+    private final Crossfader crossfader = new Crossfader();
+    private final AnalysisTap analysisTap = new AnalysisTap();
+    @Nullable
+    private volatile AudioPumpThread pumpThread;
+    private volatile int sampleRate;
+    private int channels;
+    private volatile boolean paused;
+
+    // frames played by previous tracks since the last flush
+    private long playedFramesBase;
+    // head position of the current track at the last flush or when it was acquired
+    private long headOffset;
+    private volatile int flushCount;
+    // samples written to the tracks since the last flush
+    private final AtomicLong writtenSamples = new AtomicLong();
+
+    // playback starts above the high and pauses below the low watermark
+    private volatile long lowWatermarkMs = DEFAULT_LOW_WATERMARK_MS;
+    private volatile long highWatermarkMs = DEFAULT_HIGH_WATERMARK_MS;
+    // guarded by playingMutex for writes
+    private volatile boolean buffering;
+    // no more samples will arrive so whatever is buffered gets played
+    private volatile boolean deliveryDone;
+    @Nullable
+    private volatile BufferingListener bufferingListener;
+
+    // guarded by playingMutex for writes
+    private volatile boolean idle;
+    private long wakeUpStart;
+    private long firstAudioStart;
+    @Nullable
+    private volatile IdleListener idleListener;
+
+    private volatile AudioSinkProfile profile = AudioSinkProfile.BALANCED;
+    private volatile boolean adaptiveBufferSize;
+    // profile changes are applied at the next flush or when the next track is created
+    private volatile boolean profileChanged;
+    // capacity the pump resizes the sample buffer to once it is drained or 0
+    private final AtomicInteger requestedCapacity = new AtomicInteger();
+    // buffer sized by the pump which the sdk thread switches to with its next delivery
+    @Nullable
+    private volatile SampleRingBuffer nextBuffer;
+    // size of the current track buffer as requested by the profile
+    private volatile int trackBufferFrames;
+    @Nullable
+    private volatile AdaptiveBufferSizer.Listener bufferSizeListener;
+    @Nullable
+    private volatile UnderrunListener underrunListener;
+
+    private volatile AudioOutputMode outputMode = AudioOutputMode.BLOCKING;
+    // how long the pump waits for room in a full track if no notification arrives
+    private volatile long outputWaitNanos = DEFAULT_OUTPUT_WAIT_NANOS;
+    @Nullable
+    private HandlerThread audioEventThread;
+    @Nullable
+    private Handler audioEventHandler;
+    // staging buffers for non blocking writes only touched by the pump thread
+    @Nullable
+    private ByteBuffer outputBuffer;
+    @Nullable
+    private ShortBuffer outputSamples;
 
+    private final AudioTrack.OnPlaybackPositionUpdateListener positionUpdateListener
+            = new AudioTrack.OnPlaybackPositionUpdateListener() {
         @Override
-        public void run() {
-            int itemsRead = audioBuffer.peek(pendingSamples);
-            if (itemsRead > 0) {
-                int itemsWritten = writeSamplesToAudioOutput(pendingSamples, itemsRead);
-                audioBuffer.remove(itemsWritten);
-            }
+        public void onMarkerReached(AudioTrack track) {
+            signalPump();
+        }
 
+        @Override
+        public void onPeriodicNotification(AudioTrack track) {
+            // the track has consumed a period and has room again
+            signalPump();
         }
     };
-    private int sampleRate;
-    private int channels;
+
+    VolumeAudioController(@NonNull MetricsDispatcher metrics) {
+        this.metrics = metrics;
+    }
 
     @Override
     public int onAudioDataDelivered(@NonNull short[] samples, int sampleCount, int sampleRate, int channels) {
-        if (audioTrack != null && (this.sampleRate != sampleRate || this.channels != channels)) {
+        if (hasOutput() && (this.sampleRate != sampleRate || this.channels != channels)) {
             synchronized (playingMutex) {
-                audioTrack.release();
-                audioTrack = null;
+                // keep the track around the format will most likely switch back
+                releaseOutput(true);
+                // samples queued in the old output are gone
+                writtenSamples.set(playedFramesBase * channels);
             }
         }
 
+        if (idle) {
+            wakeUp();
+        }
+
         this.sampleRate = sampleRate;
         this.channels = channels;
-        if (audioTrack == null) {
-            createAudioTrack(sampleRate, channels);
+        if (!hasOutput()) {
+            if (profileChanged) {
+                applyProfile();
+            }
+            obtainOutput(sampleRate, channels);
         }
-
-        try {
-            executorService.execute(audioRunnable);
-        } catch (RejectedExecutionException e) {
-            e.printStackTrace();
+        if (nextBuffer != null) {
+            switchToNextBuffer();
         }
 
-        return audioBuffer.write(samples, sampleCount);
+        int written = audioBuffer.write(samples, sampleCount);
+        deliveryDone = false;
+        maybeStartPlayback();
+        signalPump();
+        return written;
+    }
+
+    /**
+     * Called once the sdk has delivered all audio of the current context
+     */
+    void onAudioDeliveryDone() {
+        deliveryDone = true;
+        maybeStartPlayback();
+        signalPump();
     }
 
     @Override
     public void onAudioFlush() {
-        audioBuffer.clear();
-        if (audioTrack != null) {
-            synchronized (playingMutex) {
-                audioTrack.pause();
-                audioTrack.flush();
-                audioTrack.release();
-                audioTrack = null;
+        if (paused) {
+            audioBuffer.clear();
+        } else {
+            // keep what would have been played next to fade it out over the next track
+            crossfader.clear(audioBuffer, flushCount + 1, sampleRate, channels);
+        }
+        boolean profileChanged = this.profileChanged;
+        synchronized (playingMutex) {
+            // before the output is touched so the pump drops its processed block
+            flushCount++;
+            if (hasOutput()) {
+                if (profileChanged) {
+                    // a new output with the new profile is created with the next delivered samples
+                    releaseOutput(false);
+                } else {
+                    // the output is reused and started again with the next delivered samples
+                    pauseOutput();
+                    flushOutput();
+                    headOffset = getOutputPosition();
+                }
             }
+            playedFramesBase = 0;
+            writtenSamples.set(0);
+            setBuffering(true);
+        }
+        if (profileChanged) {
+            applyProfile();
         }
+        // the pump drops the cleared samples
+        signalPump();
     }
 
     @Override
     public void onAudioPaused() {
-        if (audioTrack != null) {
-            audioTrack.pause();
+        paused = true;
+        synchronized (playingMutex) {
+            pauseOutput();
         }
     }
 
     @Override
     public void onAudioResumed() {
-        if (audioTrack != null) {
-            audioTrack.play();
+        paused = false;
+        wakeUp();
+        synchronized (playingMutex) {
+            if (!buffering) {
+                playOutput();
+            }
         }
+        maybeStartPlayback();
+        signalPump();
     }
 
     @Override
     public void start() {
-
+        if (pumpThread == null) {
+            AudioPumpThread thread = new AudioPumpThread();
+            pumpThread = thread;
+            thread.start();
+        }
     }
 
     @Override
     public void stop() {
-        executorService.shutdown();
+        AudioPumpThread thread = pumpThread;
+        pumpThread = null;
+        if (thread != null) {
+            thread.quit();
+        }
+
+        synchronized (playingMutex) {
+            releaseOutput(false);
+            setBuffering(false);
+            if (audioEventThread != null) {
+                audioEventThread.quit();
+                audioEventThread = null;
+                audioEventHandler = null;
+            }
+        }
+        audioTrackPool.clear();
+    }
+
+    private void signalPump() {
+        AudioPumpThread thread = pumpThread;
+        if (thread != null) {
+            thread.signal();
+        }
+    }
+
+    /**
+     * Drops pooled tracks of the old profile and resizes the sample buffer, must be called without a track
+     */
+    private void applyProfile() {
+        profileChanged = false;
+        audioTrackPool.clear();
+        requestCapacity(profile.sampleBufferCapacity);
+    }
+
+    /**
+     * Lets the pump resize the sample buffer once it has drained it
+     */
+    private void requestCapacity(int capacity) {
+        requestedCapacity.set(capacity);
+        signalPump();
+    }
+
+    /**
+     * Switches to the buffer sized by the pump once the current one is drained, called on the sdk thread
+     */
+    private void switchToNextBuffer() {
+        synchronized (playingMutex) {
+            SampleRingBuffer nextBuffer = this.nextBuffer;
+            if (nextBuffer == null) return;
+            SampleRingBuffer audioBuffer = this.audioBuffer;
+            if (audioBuffer.size() != 0 || audioBuffer.hasClearedSamples()) return; // the pump still reads it
+            this.audioBuffer = nextBuffer;
+            this.nextBuffer = null;
+        }
+    }
+
+    private void obtainOutput(int sampleRate, int channels) {
+        AudioMixer mixer = this.mixer;
+        if (mixer != null && mixer.accepts(sampleRate, channels)) {
+            synchronized (playingMutex) {
+                mixerSession = mixer.openSession(this::signalPump);
+                headOffset = 0;
+                // playback starts once enough samples are buffered
+                setBuffering(true);
+            }
+            return;
+        }
+
+        AudioSinkProfile profile = this.profile;
+        AudioTrack track = audioTrackPool.acquire(sampleRate, channels);
+        if (track == null) {
+            track = createAudioTrack(sampleRate, channels, profile, adaptiveBufferSize);
+        }
+        if (track == null) return;
+
+        synchronized (playingMutex) {
+            audioTrack = track;
+            headOffset = getPlaybackHeadPosition(track);
+            trackBufferFrames = trackBufferSize(sampleRate, channels, profile) / (2 * channels);
+            if (usesNonBlockingWrites()) {
+                registerPositionUpdates(track, sampleRate, trackBufferFrames);
+            }
+            // playback starts once enough samples are buffered
+            setBuffering(true);
+        }
+    }
+
+    /**
+     * Starts the track once the buffer has reached the high watermark
+     */
+    private void maybeStartPlayback() {
+        if (!buffering || paused) return;
+        if (!deliveryDone && getBufferedSamples() < getHighWatermarkSamples()) return;
+
+        synchronized (playingMutex) {
+            if (!buffering || paused) return;
+            setBuffering(false);
+            playOutput();
+            if (firstAudioStart != 0) {
+                long firstAudioNanos = System.nanoTime() - firstAudioStart;
+                firstAudioStart = 0;
+                if (metrics.isEnabled()) {
+                    metrics.onOperation("firstAudio", firstAudioNanos, null);
+                }
+            }
+            if (wakeUpStart != 0) {
+                long wakeUpNanos = System.nanoTime() - wakeUpStart;
+                wakeUpStart = 0;
+                if (metrics.isEnabled()) {
+                    metrics.onOperation("wakeUp", wakeUpNanos, null);
+                }
+                dispatchIdleTransition(IdleTransition.Type.ACTIVE, wakeUpNanos);
+            }
+        }
+        signalPump();
+    }
+
+    /**
+     * Releases the track and the buffered samples while paused
+     * The pump stays parked until the next delivery
+     */
+    void enterIdle() {
+        synchronized (playingMutex) {
+            if (idle || !paused) return;
+            idle = true;
+            releaseOutput(false);
+            // the samples queued in the track are gone
+            writtenSamples.set(playedFramesBase * channels);
+            if (audioEventThread != null) {
+                audioEventThread.quit();
+                audioEventThread = null;
+                audioEventHandler = null;
+            }
+
+            // the sdk does not deliver while paused so nobody writes to the buffer
+            audioBuffer.clear();
+            requestCapacity(IDLE_BUFFER_CAPACITY);
+            profileChanged = true; // restores the buffer of the profile with the next track
+            dispatchIdleTransition(IdleTransition.Type.IDLE, 0);
+        }
+        audioTrackPool.clear();
+        crossfader.trim();
+    }
+
+    /**
+     * Starts measuring the wake up if idle, the resources come back with the next delivery
+     */
+    void wakeUp() {
+        synchronized (playingMutex) {
+            if (!idle) return;
+            idle = false;
+            wakeUpStart = System.nanoTime();
+        }
+    }
+
+    boolean isIdle() {
+        return idle;
+    }
+
+    /**
+     * Starts measuring the time until the output starts playing the requested audio
+     */
+    void onPlayRequested() {
+        synchronized (playingMutex) {
+            firstAudioStart = System.nanoTime();
+        }
+    }
+
+    void cancelFirstAudio() {
+        synchronized (playingMutex) {
+            firstAudioStart = 0;
+        }
+    }
+
+    private void dispatchIdleTransition(@NonNull IdleTransition.Type type, long wakeUpNanos) {
+        IdleListener listener = idleListener;
+        if (listener != null) {
+            listener.onIdleTransition(new IdleTransition(type, System.currentTimeMillis(), wakeUpNanos));
+        }
+    }
+
+    /**
+     * Pauses the track until the buffer has reached the high watermark again
+     */
+    private void rebuffer() {
+        synchronized (playingMutex) {
+            if (buffering) return;
+            setBuffering(true);
+            pauseOutput(); // keeps the samples already queued in the output
+        }
+    }
+
+    private boolean isRunningLow() {
+        return !buffering && !deliveryDone && isOutputPlaying()
+                && getBufferedSamples() < getLowWatermarkSamples();
+    }
+
+    private void setBuffering(boolean buffering) {
+        synchronized (playingMutex) {
+            if (this.buffering == buffering) return;
+            this.buffering = buffering;
+            // dispatched under the lock to keep the order of the changes
+            BufferingListener listener = bufferingListener;
+            if (listener != null) {
+                listener.onBufferingChanged(buffering);
+            }
+        }
+    }
+
+    /**
+     * Returns the samples in the buffer and in the track which are not played yet
+     */
+    private long getBufferedSamples() {
+        long queuedSamples = writtenSamples.get() - getPlayedFrames() * channels;
+        AudioPumpThread thread = pumpThread;
+        int processedSamples = thread != null ? thread.processedCount : 0;
+        return audioBuffer.size() + processedSamples + Math.max(queuedSamples, 0);
+    }
+
+    /**
+     * Returns the number of frames which have been delivered but not played yet
+     */
+    long getBufferedFrames() {
+        int channels = this.channels;
+        return channels > 0 ? getBufferedSamples() / channels : 0;
+    }
+
+    private long getLowWatermarkSamples() {
+        return Math.min(toSamples(lowWatermarkMs), getHighWatermarkSamples());
+    }
+
+    private long getHighWatermarkSamples() {
+        // the sample buffer alone must be able to reach it
+        return Math.min(toSamples(highWatermarkMs), audioBuffer.capacity() / 4 * 3);
+    }
+
+    private long toSamples(long millis) {
+        return millis * sampleRate * channels / 1000;
+    }
+
+    @Nullable
+    private static AudioTrack createAudioTrack(int sampleRate, int channels,
+                                               @NonNull AudioSinkProfile profile, boolean adaptive) {
+        int channelConfig = channelConfig(channels);
+        int bufferSize = trackBufferSize(sampleRate, channels, profile);
+        if (adaptive && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // leave room to grow, the adaptive buffer sizer starts at the size of the profile
+            bufferSize *= ADAPTIVE_CAPACITY_FACTOR;
+        }
+
+        AudioTrack audioTrack;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                audioTrack = buildAudioTrack(sampleRate, channelConfig, bufferSize, profile);
+            } catch (UnsupportedOperationException e) {
+                return null;
+            }
+        } else {
+            audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, channelConfig, 2, bufferSize, 1);
+        }
+        if (audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
+            return audioTrack;
+        } else {
+            audioTrack.release();
+            return null;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    @NonNull
+    private static AudioTrack buildAudioTrack(int sampleRate, int channelConfig, int bufferSize,
+                                              @NonNull AudioSinkProfile profile) {
+        return new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(channelConfig)
+                        .build())
+                .setBufferSizeInBytes(bufferSize)
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setPerformanceMode(profile.performanceMode)
+                .build();
+    }
+
+    /**
+     * Returns the track buffer size in bytes the profile asks for
+     */
+    private static int trackBufferSize(int sampleRate, int channels, @NonNull AudioSinkProfile profile) {
+        return AudioTrack.getMinBufferSize(sampleRate, channelConfig(channels), 2) * profile.trackBufferMultiplier;
+    }
+
+    private void registerPositionUpdates(@NonNull AudioTrack track, int sampleRate, int bufferFrames) {
+        if (audioEventHandler == null) {
+            audioEventThread = new HandlerThread("RxSpotifyPlayer-AudioEvents");
+            audioEventThread.start();
+            audioEventHandler = new Handler(audioEventThread.getLooper());
+        }
+
+        // get notified whenever half of the track buffer has been played
+        int periodFrames = Math.max(bufferFrames / 2, 1);
+        track.setPlaybackPositionUpdateListener(positionUpdateListener, audioEventHandler);
+        track.setPositionNotificationPeriod(periodFrames);
+        outputWaitNanos = TimeUnit.SECONDS.toNanos(periodFrames) / sampleRate;
+    }
+
+    private boolean usesNonBlockingWrites() {
+        return outputMode == AudioOutputMode.NON_BLOCKING
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    private int writeSamplesToAudioOutput(@NonNull short[] samples, int offset, int samplesCount) {
+        MixerSession mixerSession = this.mixerSession;
+        if (mixerSession != null) {
+            // never blocks, the mixer signals the pump once it has consumed samples
+            return mixerSession.isPlaying() ? mixerSession.write(samples, offset, samplesCount) : 0;
+        }
+
+        AudioTrack audioTrack = this.audioTrack;
+        if (audioTrack != null && isOutputPlaying()) {
+            int itemsWritten;
+            if (usesNonBlockingWrites()) {
+                itemsWritten = writeNonBlocking(audioTrack, samples, offset, samplesCount);
+            } else {
+                itemsWritten = audioTrack.write(samples, offset, samplesCount);
+            }
+            if (itemsWritten > 0) {
+                return itemsWritten;
+            }
+        }
+
+        return 0;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private int writeNonBlocking(@NonNull AudioTrack audioTrack, @NonNull short[] samples,
+                                 int offset, int samplesCount) {
+        if (outputBuffer == null) {
+            outputBuffer = ByteBuffer.allocateDirect(AUDIO_BUFFER_SIZE_SAMPLES * 2)
+                    .order(ByteOrder.nativeOrder());
+            outputSamples = outputBuffer.asShortBuffer();
+        }
+
+        // stage the samples in native memory
+        outputSamples.clear();
+        outputSamples.put(samples, offset, samplesCount);
+        outputBuffer.clear();
+        outputBuffer.limit(samplesCount * 2);
+
+        int bytesWritten = audioTrack.write(outputBuffer, samplesCount * 2, AudioTrack.WRITE_NON_BLOCKING);
+        return bytesWritten > 0 ? bytesWritten / 2 : 0;
     }
 
-    private void createAudioTrack(int sampleRate, int channels) {
-        byte channelConfig;
+    private static int channelConfig(int channels) {
         switch (channels) {
             case 0:
                 throw new IllegalStateException("Input source has 0 channels");
             case 1:
-                channelConfig = 4;
-                break;
+                return AudioFormat.CHANNEL_OUT_MONO;
             case 2:
-                channelConfig = 12;
-                break;
+                return AudioFormat.CHANNEL_OUT_STEREO;
             default:
                 throw new IllegalArgumentException("Unsupported input source has " + channels + " channels");
         }
+    }
 
-        int bufferSize = AudioTrack.getMinBufferSize(sampleRate, channelConfig, 2) * 2;
-        synchronized (playingMutex) {
-            audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, channelConfig, 2, bufferSize, 1);
-            if (audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    audioTrack.setVolume(volume);
-                } else {
-                    audioTrack.setStereoVolume(volume, volume);
-                }
-                audioTrack.play();
+    private boolean hasOutput() {
+        return audioTrack != null || mixerSession != null;
+    }
+
+    private boolean isOutputPlaying() {
+        MixerSession mixerSession = this.mixerSession;
+        if (mixerSession != null) return mixerSession.isPlaying();
+        AudioTrack audioTrack = this.audioTrack;
+        return audioTrack != null && audioTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING;
+    }
+
+    // the following must be called while holding the playing mutex
+
+    private void playOutput() {
+        if (audioTrack != null) {
+            audioTrack.play();
+        } else if (mixerSession != null) {
+            mixerSession.play();
+        }
+    }
+
+    private void pauseOutput() {
+        if (audioTrack != null) {
+            audioTrack.pause();
+        } else if (mixerSession != null) {
+            mixerSession.pause();
+        }
+    }
+
+    private void flushOutput() {
+        if (audioTrack != null) {
+            audioTrack.flush();
+        } else if (mixerSession != null) {
+            mixerSession.flush();
+        }
+    }
+
+    /**
+     * Adds the frames played by the output to the base and releases it or puts the track into the pool
+     */
+    private void releaseOutput(boolean recycle) {
+        playedFramesBase += getOutputPosition() - headOffset;
+        if (audioTrack != null) {
+            if (recycle) {
+                audioTrackPool.recycle(audioTrack, sampleRate, channels);
             } else {
                 audioTrack.release();
-                audioTrack = null;
             }
+            audioTrack = null;
+        }
+        if (mixerSession != null) {
+            mixerSession.close();
+            mixerSession = null;
         }
     }
 
-    private int writeSamplesToAudioOutput(@NonNull short[] samples, int samplesCount) {
-        if (audioTrack != null && isAudioTrackPlaying()) {
-            int itemsWritten = audioTrack.write(samples, 0, samplesCount);
-            if (itemsWritten > 0) {
-                return itemsWritten;
-            }
+    private long getOutputPosition() {
+        MixerSession mixerSession = this.mixerSession;
+        if (mixerSession != null) return mixerSession.getPlayedFrames();
+        return getPlaybackHeadPosition(audioTrack);
+    }
+
+    /**
+     * Returns the number of frames the audio output has played since the last flush
+     */
+    long getPlayedFrames() {
+        synchronized (playingMutex) {
+            return playedFramesBase + getOutputPosition() - headOffset;
         }
+    }
 
-        return 0;
+    /**
+     * Returns the number of flushes so far
+     */
+    int getFlushCount() {
+        return flushCount;
     }
 
-    private boolean isAudioTrackPlaying() {
-        return audioTrack != null && audioTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING;
+    /**
+     * Returns the sample rate of the current audio or 0
+     */
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    private static long getPlaybackHeadPosition(@Nullable AudioTrack audioTrack) {
+        if (audioTrack == null || audioTrack.getState() != AudioTrack.STATE_INITIALIZED) return 0;
+        return audioTrack.getPlaybackHeadPosition() & 0xFFFFFFFFL; // unsigned
+    }
+
+    void setOutputMode(@NonNull AudioOutputMode outputMode) {
+        this.outputMode = outputMode;
+    }
+
+    void setMixer(@Nullable AudioMixer mixer) {
+        if (this.mixer != mixer) {
+            this.mixer = mixer;
+            // the output is swapped like a profile change
+            profileChanged = true;
+        }
+    }
+
+    void setProfile(@NonNull AudioSinkProfile profile) {
+        if (this.profile != profile) {
+            this.profile = profile;
+            profileChanged = true;
+        }
+    }
+
+    void setAdaptiveBufferSize(boolean adaptiveBufferSize) {
+        if (this.adaptiveBufferSize != adaptiveBufferSize) {
+            this.adaptiveBufferSize = adaptiveBufferSize;
+            // the track needs room to grow or should give it back
+            profileChanged = true;
+        }
+    }
+
+    void setWatermarks(long lowWatermarkMs, long highWatermarkMs) {
+        this.lowWatermarkMs = lowWatermarkMs;
+        this.highWatermarkMs = highWatermarkMs;
+    }
+
+    void setIdleListener(@Nullable IdleListener idleListener) {
+        this.idleListener = idleListener;
+    }
+
+    void setBufferingListener(@Nullable BufferingListener bufferingListener) {
+        this.bufferingListener = bufferingListener;
+    }
+
+    boolean isBuffering() {
+        return buffering;
+    }
+
+    /**
+     * Returns how far the buffer is filled towards the high watermark from 0 to 1
+     */
+    float getBufferLevel() {
+        long highWatermarkSamples = getHighWatermarkSamples();
+        if (highWatermarkSamples <= 0) return 0f;
+        return Math.min((float) getBufferedSamples() / highWatermarkSamples, 1f);
+    }
+
+    void setCrossfade(long crossfadeMs) {
+        crossfader.setDuration(crossfadeMs);
+    }
+
+    /**
+     * Called when the sdk has moved to another track
+     */
+    void onTrackChanged() {
+        crossfader.onTrackChanged();
+    }
+
+    @NonNull
+    AnalysisTap getAnalysisTap() {
+        return analysisTap;
+    }
+
+    void addProcessor(@NonNull AudioProcessor processor) {
+        processorChain.add(processor);
+    }
+
+    void removeProcessor(@NonNull AudioProcessor processor) {
+        processorChain.remove(processor);
+    }
+
+    void setBufferSizeListener(@Nullable AdaptiveBufferSizer.Listener bufferSizeListener) {
+        this.bufferSizeListener = bufferSizeListener;
+    }
+
+    /**
+     * Sets the listener for underruns, the track is only polled while there is a listener, metrics or adaptive sizing
+     */
+    void setUnderrunListener(@Nullable UnderrunListener underrunListener) {
+        this.underrunListener = underrunListener;
     }
 
     void setVolume(float volume) {
-        VolumeAudioController.volume = volume;
-        if (audioTrack != null) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                audioTrack.setVolume(volume);
-            } else {
-                audioTrack.setStereoVolume(volume, volume);
+        // the pump thread ramps towards it
+        gainStage.setTarget(volume);
+    }
+
+    float getVolume() {
+        return gainStage.getTarget();
+    }
+
+    void setVolumeRamp(long rampMs, @NonNull VolumeRamp ramp) {
+        gainStage.setRamp(rampMs, ramp);
+    }
+
+    /**
+     * Long lived thread which drains the sample buffer into the audio track
+     */
+    private final class AudioPumpThread extends Thread {
+
+        // processed block which has not been fully written yet
+        private final short[] processedSamples = new short[AUDIO_BUFFER_SIZE_SAMPLES];
+        private int processedOffset;
+        private volatile int processedCount;
+        private int processedFlushCount;
+        private AdaptiveBufferSizer bufferSizer;
+        private AudioTrack underrunTrack;
+        private int underrunCount;
+        private long lastUnderrunPoll;
+        private volatile boolean running = true;
+
+        private AudioPumpThread() {
+            super("RxSpotifyPlayer-AudioPump");
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+
+            while (running) {
+                boolean outputFull = drain();
+                // a signal which arrives after these checks leaves a permit so the park below returns right away
+                boolean empty = audioBuffer.size() == 0 && processedCount == 0;
+                if (empty) {
+                    resizeBuffer();
+                }
+                if (outputFull) {
+                    // wait for a position notification or until a period has been played
+                    LockSupport.parkNanos(this, outputWaitNanos);
+                } else if (empty && isOutputPlaying() && !deliveryDone) {
+                    // keep an eye on the track while it plays out what is left
+                    LockSupport.parkNanos(this, outputWaitNanos);
+                } else if (empty || !isOutputPlaying()) {
+                    // nothing to do until new data arrives or the track resumes
+                    LockSupport.park(this);
+                }
+            }
+        }
+
+        /**
+         * Sizes a new sample buffer once the current one is drained
+         * While idle the sdk delivers nothing so it is swapped right away, otherwise the sdk thread switches to it
+         */
+        private void resizeBuffer() {
+            int capacity = requestedCapacity.get();
+            if (capacity == 0) return;
+            SampleRingBuffer audioBuffer = VolumeAudioController.this.audioBuffer;
+            if (audioBuffer.hasClearedSamples()) return; // dropped with the next drain
+            SampleRingBuffer buffer = audioBuffer.capacity() != capacity ? new SampleRingBuffer(capacity) : null;
+            synchronized (playingMutex) {
+                // a request in the meantime left a permit so we come back for it
+                if (!requestedCapacity.compareAndSet(capacity, 0)) return;
+                if (buffer != null && idle) {
+                    VolumeAudioController.this.audioBuffer = buffer;
+                    nextBuffer = null;
+                } else {
+                    nextBuffer = buffer;
+                }
+            }
+        }
+
+        /**
+         * Writes full blocks until the buffer is empty or the track accepts no more samples
+         * Returns true if the track is playing but has no room left
+         */
+        private boolean drain() {
+            // the buffer is swapped on profile changes
+            SampleRingBuffer audioBuffer = VolumeAudioController.this.audioBuffer;
+            while (running) {
+                int flushCount = VolumeAudioController.this.flushCount;
+                if (processedFlushCount != flushCount) {
+                    // whatever has been processed before the flush is stale
+                    processedFlushCount = flushCount;
+                    processedCount = 0;
+                    processorChain.reset();
+                    crossfader.cancel();
+                }
+                // the samples cleared by a flush are dropped here, also while the output is paused
+                crossfader.capture(audioBuffer);
+                if (isRunningLow()) {
+                    rebuffer();
+                    return false;
+                }
+                if (!isOutputPlaying()) return false; // track is paused or gone
+                if (processedCount == 0 && !processNextBlock(audioBuffer)) return false;
+
+                int itemsWritten = writeSamplesToAudioOutput(processedSamples, processedOffset, processedCount);
+                if (flushCount != VolumeAudioController.this.flushCount) {
+                    // the write raced with a flush and put stale samples into the flushed output
+                    discardStaleWrite();
+                    continue;
+                }
+                if (itemsWritten <= 0) return true;
+                processedOffset += itemsWritten;
+                processedCount -= itemsWritten;
+                writtenSamples.addAndGet(itemsWritten);
+
+                if (metrics.isEnabled()) {
+                    metrics.onSamplesWritten(itemsWritten);
+                }
+                pollUnderruns();
+            }
+            return false;
+        }
+
+        /**
+         * Takes the next block out of the buffer and runs the processors and the gain on it
+         * Processing happens exactly once per block since processors keep state across blocks
+         */
+        private boolean processNextBlock(@NonNull SampleRingBuffer audioBuffer) {
+            int flushCount = VolumeAudioController.this.flushCount;
+            int itemsRead = audioBuffer.peek(processedSamples);
+            if (itemsRead <= 0) return false;
+            audioBuffer.remove(itemsRead);
+
+            int sampleRate = VolumeAudioController.this.sampleRate;
+            int channels = VolumeAudioController.this.channels;
+            crossfader.mix(processedSamples, itemsRead, flushCount, sampleRate, channels);
+            processorChain.process(processedSamples, itemsRead, sampleRate, channels);
+            gainStage.process(processedSamples, itemsRead, sampleRate, channels);
+            gainStage.advance(itemsRead);
+            analysisTap.write(processedSamples, itemsRead, sampleRate, channels);
+
+            processedOffset = 0;
+            processedCount = itemsRead;
+            processedFlushCount = flushCount;
+            return true;
+        }
+
+        private void discardStaleWrite() {
+            synchronized (playingMutex) {
+                if (!hasOutput()) return;
+                boolean playing = isOutputPlaying();
+                pauseOutput();
+                flushOutput();
+                headOffset = getOutputPosition();
+                if (playing) {
+                    playOutput();
+                }
+            }
+        }
+
+        /**
+         * Reports new underruns to the metrics, the underrun listener and the adaptive buffer sizer
+         */
+        private void pollUnderruns() {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return;
+            boolean adaptive = adaptiveBufferSize;
+            UnderrunListener underrunListener = VolumeAudioController.this.underrunListener;
+            if (!adaptive && !metrics.isEnabled() && underrunListener == null) return;
+
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastUnderrunPoll < UNDERRUN_POLL_INTERVAL_MS) return;
+            lastUnderrunPoll = now;
+
+            AudioTrack track = audioTrack;
+            if (track == null) return;
+            int count = track.getUnderrunCount();
+            if (track != underrunTrack) {
+                // counts are per track and pooled tracks keep theirs
+                underrunTrack = track;
+                underrunCount = count;
+            }
+            int newUnderruns = count - underrunCount;
+            underrunCount = count;
+
+            if (newUnderruns > 0 && metrics.isEnabled()) {
+                metrics.onUnderrun(newUnderruns);
+            }
+            if (newUnderruns > 0 && underrunListener != null) {
+                underrunListener.onUnderruns(newUnderruns);
             }
+            if (adaptive) {
+                if (bufferSizer == null) {
+                    bufferSizer = new AdaptiveBufferSizer(this::onBufferSizeDecision);
+                }
+                bufferSizer.update(track, trackBufferFrames, newUnderruns, count, now);
+            }
+        }
+
+        private void onBufferSizeDecision(@NonNull BufferSizeDecision decision) {
+            AdaptiveBufferSizer.Listener listener = bufferSizeListener;
+            if (listener != null) {
+                listener.onBufferSizeDecision(decision);
+            }
+        }
+
+        private void signal() {
+            // unconditional, a flag checked before the permit is set could miss a pump which is about to park
+            LockSupport.unpark(this);
+        }
+
+        private void quit() {
+            running = false;
+            LockSupport.unpark(this);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package com.ivianuu.rxspotifyplayer;
+
+/**
+ * Curve used to move between volumes
+ */
+public enum VolumeRamp {
+    /**
+     * Changes the gain by the same amount over time
+     */
+    LINEAR,
+    /**
+     * Changes the gain by the same ratio over time which sounds even to the ear
+     */
+    EXPONENTIAL
+}
@@ -0,0 +1,41 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Mono mix of the audio which has just been played
+ */
+public final class Waveform {
+
+    private final float[] samples;
+    private final int sampleRate;
+    private final long timestamp;
+
+    Waveform(@NonNull float[] samples, int sampleRate, long timestamp) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns the samples from -1 to 1 oldest first, do not modify the array
+     */
+    @NonNull
+    public float[] getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns the sample rate of the samples
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns when the waveform was captured
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
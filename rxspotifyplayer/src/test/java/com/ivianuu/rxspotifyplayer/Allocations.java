@@ -0,0 +1,51 @@
+package com.ivianuu.rxspotifyplayer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counts the bytes allocated by the current thread, skips the test if the jvm can not count them
+ */
+final class Allocations {
+
+    private static final int WARM_UP_RUNS = 100000;
+    private static final int ROUNDS = 3;
+
+    private Allocations() {
+        // no instances
+    }
+
+    /**
+     * Runs the action the number of times after a warm up and returns the bytes allocated by the best of a few rounds
+     */
+    static long count(int runs, Action action) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        // class loading and compilation are not counted
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            action.run(i);
+        }
+
+        // a recompilation in the middle of a round allocates on its own, the best round counts
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocationBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < runs; i++) {
+                action.run(i);
+            }
+            allocated = Math.min(allocated, allocationBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        return allocated;
+    }
+
+    interface Action {
+        void run(int i);
+    }
+}
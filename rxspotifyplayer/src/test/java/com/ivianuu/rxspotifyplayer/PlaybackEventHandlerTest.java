@@ -0,0 +1,201 @@
+package com.ivianuu.rxspotifyplayer;
+
+import android.support.annotation.NonNull;
+
+import com.spotify.sdk.android.player.Metadata;
+import com.spotify.sdk.android.player.PlaybackState;
+import com.spotify.sdk.android.player.PlayerEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackEventHandlerTest {
+
+    private static final String URI = "spotify:track:5atzkSaRuwgXiPDRi9qyKz";
+
+    private final CountingSource source = new CountingSource();
+    private final RecordingListener listener = new RecordingListener();
+    private PlaybackEventHandler handler;
+
+    @Before
+    public void setUp() {
+        handler = new PlaybackEventHandler(source, listener);
+    }
+
+    @Test
+    public void everyEventReadsTheNativeStateAtMostOnce() {
+        source.set(true, 1000, URI);
+        PlayerEvent[] events = {
+                PlayerEvent.kSpPlaybackNotifyPlay,
+                PlayerEvent.kSpPlaybackNotifyPause,
+                PlayerEvent.kSpPlaybackNotifyTrackChanged,
+                PlayerEvent.kSpPlaybackNotifyAudioDeliveryDone,
+                PlayerEvent.kSpPlaybackNotifyMetadataChanged,
+                PlayerEvent.kSpPlaybackNotifyBecameActive
+        };
+        for (PlayerEvent event : events) {
+            int stateReads = source.stateReads;
+            int metadataReads = source.metadataReads;
+            handler.onPlaybackEvent(event);
+            assertTrue(event.name(), source.stateReads - stateReads <= 1);
+            assertTrue(event.name(), source.metadataReads - metadataReads <= 1);
+        }
+        assertEquals(4, source.stateReads);
+        assertEquals(4, source.metadataReads);
+    }
+
+    @Test
+    public void audioDeliveryDoneWhileStoppedCompletesTheTrack() {
+        source.set(false, 0, URI);
+        handler.onPlaybackEvent(PlayerEvent.kSpPlaybackNotifyAudioDeliveryDone);
+        assertEquals(1, listener.audioDeliveryDone);
+        assertEquals(1, listener.completions);
+
+        source.set(true, 0, URI);
+        handler.onPlaybackEvent(PlayerEvent.kSpPlaybackNotifyAudioDeliveryDone);
+        assertEquals(2, listener.audioDeliveryDone);
+        assertEquals(1, listener.completions);
+    }
+
+    @Test
+    public void playWithoutMetadataIsPublishedWithTheNextMetadata() {
+        source.set(true, 500, null);
+        handler.onPlaybackEvent(PlayerEvent.kSpPlaybackNotifyPlay);
+        assertEquals(1, source.stateReads);
+        assertTrue(listener.states.isEmpty());
+
+        source.set(true, 600, URI);
+        handler.onPlaybackEvent(PlayerEvent.kSpPlaybackNotifyMetadataChanged);
+        assertEquals(2, source.stateReads);
+        assertEquals(1, listener.states.size());
+        PlayerSnapshot snapshot = listener.states.get(0);
+        assertEquals(URI, snapshot.uri);
+        assertEquals(600, PlaybackSnapshot.getProgress(snapshot.state));
+        assertTrue(snapshot.isPlaying());
+
+        // the change has been handled
+        handler.onPlaybackEvent(PlayerEvent.kSpPlaybackNotifyMetadataChanged);
+        assertEquals(2, source.stateReads);
+        assertEquals(1, listener.states.size());
+    }
+
+    @Test
+    public void trackChangePassesTheNewUri() {
+        source.set(true, 0, URI);
+        handler.onPlaybackEvent(PlayerEvent.kSpPlaybackNotifyTrackChanged);
+        assertEquals(1, listener.trackChanges.size());
+        assertEquals(URI, listener.trackChanges.get(0));
+    }
+
+    @Test
+    public void eventsDoNotAllocate() {
+        source.set(true, 1000, URI);
+        PlaybackEventHandler handler = new PlaybackEventHandler(source, new NoOpListener());
+        PlayerEvent[] events = {
+                PlayerEvent.kSpPlaybackNotifyPlay,
+                PlayerEvent.kSpPlaybackNotifyPause,
+                PlayerEvent.kSpPlaybackNotifyTrackChanged,
+                PlayerEvent.kSpPlaybackNotifyAudioDeliveryDone,
+                PlayerEvent.kSpPlaybackNotifyMetadataChanged
+        };
+        int count = 1000000;
+        long allocated = Allocations.count(count, i -> handler.onPlaybackEvent(events[i % events.length]));
+
+        // a single object per event would be megabytes, allow for the bookkeeping of the bean itself
+        assertTrue("allocated " + allocated + " bytes for " + count + " events", allocated < 1024);
+    }
+
+    private static final class CountingSource implements PlayerSnapshot.Source {
+
+        private PlaybackState playbackState;
+        private Metadata metadata;
+        int stateReads;
+        int metadataReads;
+
+        void set(boolean playing, long position, String uri) {
+            playbackState = new PlaybackState(playing, false, false, true, position);
+            Metadata.Track track = uri != null
+                    ? new Metadata.Track("name", uri, "artist", "", "album", "", 180000, 0, "")
+                    : null;
+            metadata = new Metadata(null, null, null, track, null);
+        }
+
+        @Override
+        public PlaybackState getPlaybackState() {
+            stateReads++;
+            return playbackState;
+        }
+
+        @Override
+        public Metadata getMetadata() {
+            metadataReads++;
+            return metadata;
+        }
+    }
+
+    private static final class NoOpListener implements PlaybackEventHandler.Listener {
+
+        // keeps the snapshot escaping so a per event allocation can not be optimized away
+        PlayerSnapshot last;
+
+        @Override
+        public void onAudioDeliveryDone() {
+        }
+
+        @Override
+        public void onCompletion() {
+        }
+
+        @Override
+        public void onPlayingChanged(boolean playing) {
+        }
+
+        @Override
+        public void onTrackChanged(@NonNull String uri) {
+        }
+
+        @Override
+        public void onPlaybackState(@NonNull PlayerSnapshot snapshot) {
+            last = snapshot;
+        }
+    }
+
+    private static final class RecordingListener implements PlaybackEventHandler.Listener {
+
+        int audioDeliveryDone;
+        int completions;
+        final List<String> trackChanges = new ArrayList<>();
+        final List<PlayerSnapshot> states = new ArrayList<>();
+
+        @Override
+        public void onAudioDeliveryDone() {
+            audioDeliveryDone++;
+        }
+
+        @Override
+        public void onCompletion() {
+            completions++;
+        }
+
+        @Override
+        public void onPlayingChanged(boolean playing) {
+        }
+
+        @Override
+        public void onTrackChanged(@NonNull String uri) {
+            trackChanges.add(uri);
+        }
+
+        @Override
+        public void onPlaybackState(@NonNull PlayerSnapshot snapshot) {
+            // the snapshot is reused by the handler
+            states.add(new PlayerSnapshot().set(snapshot.state, snapshot.uri, snapshot.timestamp));
+        }
+    }
+}
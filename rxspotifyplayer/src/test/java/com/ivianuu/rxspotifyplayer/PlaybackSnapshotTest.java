@@ -0,0 +1,52 @@
+package com.ivianuu.rxspotifyplayer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackSnapshotTest {
+
+    @Test
+    public void valuesSurvivePacking() {
+        long snapshot = PlaybackSnapshot.pack(true, 61_000, 240_000);
+        assertTrue(PlaybackSnapshot.isPlaying(snapshot));
+        assertEquals(61_000, PlaybackSnapshot.getProgress(snapshot));
+        assertEquals(240_000, PlaybackSnapshot.getDuration(snapshot));
+    }
+
+    @Test
+    public void emptySnapshotHasUnknownValues() {
+        assertFalse(PlaybackSnapshot.isPlaying(PlaybackSnapshot.EMPTY));
+        assertEquals(-1, PlaybackSnapshot.getProgress(PlaybackSnapshot.EMPTY));
+        assertEquals(-1, PlaybackSnapshot.getDuration(PlaybackSnapshot.EMPTY));
+    }
+
+    @Test
+    public void valuesAreClamped() {
+        long snapshot = PlaybackSnapshot.pack(false, -5, Integer.MAX_VALUE);
+        assertEquals(-1, PlaybackSnapshot.getProgress(snapshot));
+        assertEquals(Integer.MAX_VALUE - 1, PlaybackSnapshot.getDuration(snapshot));
+    }
+
+    @Test
+    public void stateMatchesItsSnapshot() {
+        long snapshot = PlaybackSnapshot.pack(true, 1000, 2000);
+        PlaybackState state = PlaybackState.fromSnapshot(snapshot, "spotify:track:a", 42L);
+        assertTrue(state.matches(snapshot, "spotify:track:a", 42L));
+        assertFalse(state.matches(snapshot, "spotify:track:b", 42L));
+        assertFalse(state.matches(snapshot, "spotify:track:a", 43L));
+        assertFalse(state.matches(PlaybackSnapshot.pack(false, 1000, 2000), "spotify:track:a", 42L));
+    }
+
+    @Test
+    public void packingDoesNotAllocate() {
+        long[] sink = new long[1];
+        long allocated = Allocations.count(1_000_000, i -> {
+            long snapshot = PlaybackSnapshot.pack((i & 1) == 0, i, i * 2);
+            sink[0] += PlaybackSnapshot.getProgress(snapshot) + PlaybackSnapshot.getDuration(snapshot);
+        });
+        assertEquals(0, allocated);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ivianuu.rxspotifyplayer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RxSpotifyPlayerTest {
+
+    private static final String URI = "spotify:track:5atzkSaRuwgXiPDRi9qyKz";
+
+    private RxSpotifyPlayer player;
+
+    @Before
+    public void setUp() {
+        // the player is not initialized so nothing touches the sdk or the audio output
+        player = new RxSpotifyPlayer(null, "client id");
+    }
+
+    @Test
+    public void playbackStateIsNeverNull() {
+        PlaybackState playbackState = player.getPlaybackState();
+        assertNotNull(playbackState);
+        assertEquals(-1, playbackState.getProgress());
+        assertEquals(PlaybackSnapshot.EMPTY, player.getPlaybackSnapshot());
+    }
+
+    @Test
+    public void stateIsCreatedOnDemandWithoutObservers() {
+        player.publishPlaybackState(new PlayerSnapshot().set(PlaybackSnapshot.pack(true, 1000, 2000), URI, 42L));
+
+        PlaybackState playbackState = player.getPlaybackState();
+        assertTrue(playbackState.isPlaying());
+        assertEquals(1000, playbackState.getProgress());
+        assertEquals(2000, playbackState.getDuration());
+        assertEquals(URI, playbackState.getUri());
+        // the state is only created once per snapshot
+        assertTrue(playbackState == player.getPlaybackState());
+    }
+
+    @Test
+    public void subscriberGetsTheCurrentState() {
+        TestObserver<PlaybackState> first = player.playbackState().test();
+        first.dispose();
+        // nobody listens to this one so the subject still holds the first state
+        player.publishPlaybackState(new PlayerSnapshot().set(PlaybackSnapshot.pack(false, 500, 2000), URI, 42L));
+
+        TestObserver<PlaybackState> second = player.playbackState().test();
+        second.assertValueCount(1);
+        assertEquals(500, second.values().get(0).getProgress());
+
+        player.publishPlaybackState(new PlayerSnapshot().set(PlaybackSnapshot.pack(true, 600, 2000), URI, 43L));
+        second.assertValueCount(2);
+        assertEquals(600, second.values().get(1).getProgress());
+    }
+
+    @Test
+    public void publishingWithoutObserversDoesNotAllocate() {
+        // the seqlock write, the session save request and the audio clock anchor
+        PlayerSnapshot snapshot = new PlayerSnapshot();
+        long[] sink = new long[1];
+        int count = 1000000;
+        long allocated = Allocations.count(count, i -> {
+            player.publishPlaybackState(snapshot.set(PlaybackSnapshot.pack(true, i, 2000000), URI, i));
+            sink[0] += player.getEstimatedProgress() + player.getPlaybackSnapshot();
+        });
+
+        // a single object per state would be megabytes, allow for the bookkeeping of the bean itself
+        assertTrue("allocated " + allocated + " bytes for " + count + " states", allocated < 1024);
+    }
+}
@@ -0,0 +1,212 @@
+package com.ivianuu.rxspotifyplayer;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SampleRingBufferTest {
+
+    private static final int SAMPLE_COUNT = 10_000_000;
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1024, new SampleRingBuffer(1000).capacity());
+        assertEquals(1024, new SampleRingBuffer(1024).capacity());
+    }
+
+    @Test
+    public void writeStopsWhenFull() {
+        SampleRingBuffer buffer = new SampleRingBuffer(8);
+        assertEquals(8, buffer.write(new short[12], 12));
+        assertEquals(0, buffer.write(new short[1], 1));
+        assertEquals(8, buffer.size());
+    }
+
+    @Test
+    public void samplesWrapAroundInOrder() {
+        SampleRingBuffer buffer = new SampleRingBuffer(8);
+        short[] target = new short[5];
+        short next = 0;
+        short expected = 0;
+        for (int round = 0; round < 100; round++) {
+            short[] samples = new short[5];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = next++;
+            }
+            assertEquals(5, buffer.write(samples, 5));
+            assertEquals(5, buffer.peek(target));
+            buffer.remove(5);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(expected++, target[i]);
+            }
+        }
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void clearDropsAllSamples() {
+        SampleRingBuffer buffer = new SampleRingBuffer(8);
+        buffer.write(new short[] { 1, 2, 3, 4 }, 4);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.peek(new short[4]));
+    }
+
+    @Test
+    public void clearKeepsTheSamplesWrittenAfterIt() {
+        SampleRingBuffer buffer = new SampleRingBuffer(8);
+        buffer.write(new short[] { 1, 2, 3 }, 3);
+        buffer.clear();
+        buffer.write(new short[] { 4, 5 }, 2);
+        assertEquals(2, buffer.size());
+        short[] target = new short[8];
+        assertEquals(2, buffer.peek(target));
+        assertEquals(4, target[0]);
+        assertEquals(5, target[1]);
+    }
+
+    @Test
+    public void clearedSamplesTakeUpSpaceUntilDropped() {
+        SampleRingBuffer buffer = new SampleRingBuffer(8);
+        buffer.write(new short[8], 8);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.hasClearedSamples());
+        assertEquals(0, buffer.write(new short[1], 1));
+
+        buffer.dropCleared();
+        assertFalse(buffer.hasClearedSamples());
+        assertEquals(8, buffer.write(new short[8], 8));
+    }
+
+    @Test
+    public void dropClearedCopiesTheOldestSamples() {
+        SampleRingBuffer buffer = new SampleRingBuffer(8);
+        buffer.write(new short[] { 1, 2, 3, 4 }, 4);
+        buffer.clear();
+        short[] target = new short[2];
+        assertEquals(2, buffer.dropCleared(target, 2));
+        assertEquals(1, target[0]);
+        assertEquals(2, target[1]);
+        assertEquals(0, buffer.dropCleared(target, 2));
+        assertEquals(0, buffer.peek(new short[4]));
+    }
+
+    @Test
+    public void concurrentClearsNeverMoveTheReadPositionBack() throws InterruptedException {
+        final SampleRingBuffer buffer = new SampleRingBuffer(1 << 12);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final AtomicInteger done = new AtomicInteger();
+
+        Thread producer = new Thread(() -> {
+            // every value takes two samples so it can not wrap around, all counts stay even
+            short[] samples = new short[700];
+            int next = 0;
+            for (int round = 0; round < 200_000; round++) {
+                for (int i = 0; i < samples.length; i += 2) {
+                    samples[i] = (short) ((next + i / 2) >>> 16);
+                    samples[i + 1] = (short) (next + i / 2);
+                }
+                next += buffer.write(samples, samples.length) / 2;
+                if (round % 7 == 0) {
+                    buffer.clear();
+                }
+            }
+            done.set(1);
+        });
+
+        Thread consumer = new Thread(() -> {
+            short[] target = new short[1000];
+            int last = -1;
+            while (done.get() == 0 || buffer.size() > 0) {
+                int count = buffer.peek(target);
+                for (int i = 0; i < count; i += 2) {
+                    int value = target[i] << 16 | target[i + 1] & 0xFFFF;
+                    // a clear may skip values but never repeats one
+                    if (value <= last) {
+                        failure.compareAndSet(null, "value " + value + " after " + last);
+                        return;
+                    }
+                    last = value;
+                }
+                buffer.remove(count);
+            }
+        });
+        Thread.UncaughtExceptionHandler handler = (thread, throwable) -> failure.compareAndSet(null, throwable.toString());
+        producer.setUncaughtExceptionHandler(handler);
+        consumer.setUncaughtExceptionHandler(handler);
+
+        producer.start();
+        consumer.start();
+        producer.join(60_000);
+        consumer.join(60_000);
+
+        assertNull(failure.get());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void twoThreadsTransferMillionsOfSamplesInOrderWithoutLoss() throws InterruptedException {
+        final SampleRingBuffer buffer = new SampleRingBuffer(1 << 12);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final AtomicInteger readCount = new AtomicInteger();
+
+        Thread producer = new Thread(() -> {
+            short[] samples = new short[1500];
+            int written = 0;
+            int chunk = 1;
+            while (written < SAMPLE_COUNT) {
+                // odd chunk sizes move the wrap around point all over the buffer
+                int count = Math.min(chunk, SAMPLE_COUNT - written);
+                for (int i = 0; i < count; i++) {
+                    samples[i] = (short) (written + i);
+                }
+                int itemsWritten = buffer.write(samples, count);
+                if (itemsWritten == 0) {
+                    Thread.yield(); // full
+                }
+                written += itemsWritten;
+                chunk = (chunk + 7) % samples.length + 1;
+            }
+        });
+
+        Thread consumer = new Thread(() -> {
+            short[] target = new short[1000];
+            int read = 0;
+            while (read < SAMPLE_COUNT) {
+                int count = buffer.peek(target);
+                if (count == 0) {
+                    Thread.yield(); // empty
+                    continue;
+                }
+                for (int i = 0; i < count; i++) {
+                    if (target[i] != (short) (read + i)) {
+                        failure.compareAndSet(null, "sample " + (read + i) + " was " + target[i]);
+                        return;
+                    }
+                }
+                buffer.remove(count);
+                read += count;
+                readCount.lazySet(read);
+            }
+        });
+        Thread.UncaughtExceptionHandler handler = (thread, throwable) -> failure.compareAndSet(null, throwable.toString());
+        producer.setUncaughtExceptionHandler(handler);
+        consumer.setUncaughtExceptionHandler(handler);
+
+        producer.start();
+        consumer.start();
+        producer.join(60_000);
+        consumer.join(60_000);
+
+        assertNull(failure.get());
+        assertEquals(SAMPLE_COUNT, readCount.get());
+        assertEquals(0, buffer.size());
+    }
+}
@@ -7,6 +7,7 @@ import android.widget.Button;
 import android.widget.SeekBar;
 import android.widget.Toast;
 
+import com.ivianuu.rxspotifyplayer.PlayerHost;
 import com.ivianuu.rxspotifyplayer.RxSpotifyPlayer;
 import com.ivianuu.rxspotifyplayerextensions.AudioFocusHelper;
 import com.ivianuu.rxspotifyplayerextensions.ProgressUpdateHelper;
@@ -14,6 +15,8 @@ import com.spotify.sdk.android.authentication.AuthenticationClient;
 import com.spotify.sdk.android.authentication.AuthenticationRequest;
 import com.spotify.sdk.android.authentication.AuthenticationResponse;
 
+import io.reactivex.disposables.CompositeDisposable;
+
 public class MainActivity extends AppCompatActivity {
 
     private static final int LOGIN_REQUEST_CODE = 1234;
@@ -22,8 +25,10 @@ public class MainActivity extends AppCompatActivity {
     private static final String REDIRECT_URI = "rxspotifyplayer://callback";
     private static final String[] SCOPES = new String[]{ "streaming" };
 
+    private PlayerHost playerHost;
     private RxSpotifyPlayer player;
     private AudioFocusHelper audioFocusHelper;
+    private final CompositeDisposable disposables = new CompositeDisposable();
 
     private Button playPauseButton;
     private Button volume;
@@ -76,26 +81,39 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        player = RxSpotifyPlayer.create(this, CLIENT_ID);
+        // the player outlives rotations and is released a while after the last activity is gone
+        playerHost = PlayerHost.get(this, CLIENT_ID);
+        player = playerHost.acquire();
 
-        player.playbackState()
-                .subscribe(playbackState -> playPauseButton.setText(playbackState.isPlaying() ? "pause" : "resume"));
+        disposables.add(player.playbackState()
+                .subscribe(playbackState -> playPauseButton.setText(playbackState.isPlaying() ? "pause" : "resume")));
 
-        player.errors()
-                .subscribe(error -> {});
+        disposables.add(player.errors()
+                .subscribe(error -> {}));
 
-        player.completion()
-                .subscribe(o -> player.play("3yagAUVQNKv1M75u7S1ELW").subscribe(
-                        () -> Toast.makeText(
-                                MainActivity.this, "playing next track", Toast.LENGTH_SHORT).show()));
+        disposables.add(player.completion()
+                .flatMapCompletable(o -> player.play("3yagAUVQNKv1M75u7S1ELW")
+                        .doOnComplete(() -> Toast.makeText(
+                                MainActivity.this, "playing next track", Toast.LENGTH_SHORT).show())
+                        .doOnError(Throwable::printStackTrace)
+                        .onErrorComplete())
+                .subscribe());
 
         audioFocusHelper = AudioFocusHelper.create(this, player);
 
-        ProgressUpdateHelper.from(player.playbackState())
+        disposables.add(ProgressUpdateHelper.create(player).progress()
                 .subscribe(playbackProgress -> {
                     progressSeekBar.setMax(playbackProgress.getDuration());
                     progressSeekBar.setProgress(playbackProgress.getProgress());
-                });
+                }));
+
+        if (player.isInitialized()) {
+            // the player survived the rotation, only the focus went away with the old activity
+            if (player.getPlaybackState().isPlaying()) {
+                audioFocusHelper.requestAudioFocus();
+            }
+            return;
+        }
 
         AuthenticationRequest request = new AuthenticationRequest.Builder(CLIENT_ID, AuthenticationResponse.Type.TOKEN, REDIRECT_URI)
                 .setShowDialog(false)
@@ -126,21 +144,19 @@ public class MainActivity extends AppCompatActivity {
             Toast.makeText(this, "no focus", Toast.LENGTH_SHORT).show();
             return;
         }
-        player.init(accessToken) // init player
-                .andThen(player.play("5atzkSaRuwgXiPDRi9qyKz")) // start playing
-                .andThen(player.seekTo(180000)) // seek
+        disposables.add(player.init(accessToken) // init player
+                .andThen(player.play("5atzkSaRuwgXiPDRi9qyKz", 0, 180000)) // start playing at 3 minutes
                 .subscribe(() -> Toast.makeText(
                         MainActivity.this, "Success", Toast.LENGTH_SHORT).show(),
-                        Throwable::printStackTrace);
-
-
+                        Throwable::printStackTrace));
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         // clean up
-        player.release();
+        disposables.dispose();
+        playerHost.release();
         audioFocusHelper.abandonFocus();
     }
 }